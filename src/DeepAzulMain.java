@@ -1,16 +1,32 @@
 import java.util.Scanner;
 
+import search.RootParallelSearch;
 import state.AzulState;
+import state.ConsoleRefillSource;
+import state.RefillSource;
+import state.TileColor;
 
 /**
  * This class contains the main method for the DeepAzul program.
  * 
+ * The optional argument is the seed for the AI's search, which is printed at the
+ * start so that a game can be replayed with the same seed.
+ * 
  * @author Aaron Tetens
  */
 public class DeepAzulMain {
 
+	// how long the AI thinks about each move, and how much memory its
+	// transposition tables may use in total
+	private static final long SEARCH_TIME_MILLIS = 60 * 1000;
+	private static final long TABLE_BYTES = 256L * 1024 * 1024;
+
 	public static void main(final String[] args) {
+		final long seed = (args.length > 0) ? Long.parseLong(args[0]) : System.nanoTime();
+		System.out.println("Search seed " + seed);
+
 		final Scanner in = new Scanner(System.in);
+		final RefillSource refillSource = new ConsoleRefillSource(in);
 
 		// initialize game state
 		int numPlayers = 0;
@@ -28,7 +44,7 @@ public class DeepAzulMain {
 				continue;
 			}
 			try {
-				state = new AzulState(numPlayers, in);
+				state = new AzulState(numPlayers, refillSource);
 			} catch (final IllegalArgumentException e) {
 				System.out.println(e.getMessage());
 				tryAgain = true;
@@ -56,15 +72,20 @@ public class DeepAzulMain {
 			}
 		}
 
+		// search on every core, with the tables kept for the whole game, since
+		// positions from one search are often reached again in the next
+		final int numThreads = Runtime.getRuntime().availableProcessors();
+		final RootParallelSearch search = new RootParallelSearch(numThreads, TABLE_BYTES / numThreads, seed);
+
 		// game play loop
-		while (state.getWinningPlayers().isEmpty()) {
+		while (!state.isGameOver()) {
 			if (state.getCurrentPlayer() == aiPlayer) {
 				System.out.println("AI is thinking...");
-				state = (AzulState) MCTS.search(state, 60, 1);
+				state = search.search(state, SEARCH_TIME_MILLIS);
 				System.out.println(state);
 
-				if (state.getWinningPlayers().isEmpty() && ((AzulState) state).isRoundOver()) {
-					((AzulState) state).refillDisplaysFromInput(in);
+				if (!state.isGameOver() && state.isRoundOver()) {
+					refillSource.refill(state);
 					System.out.println(state);
 				}
 			} else {
@@ -72,7 +93,7 @@ public class DeepAzulMain {
 				System.out.println("Player " + state.getCurrentPlayer() + "'s turn!");
 
 				int tileLocation = 0;
-				String tileChoice = "";
+				TileColor tileChoice = null;
 				int rowChoice = 0;
 				tryAgain = true;
 
@@ -89,7 +110,12 @@ public class DeepAzulMain {
 					}
 
 					System.out.print("Which color? Use one of {B, Y, R, K, W}: ");
-					tileChoice = in.nextLine().toUpperCase();
+					tileChoice = TileColor.parse(in.nextLine());
+					if (tileChoice == null) {
+						System.out.println("Please enter one of {B, Y, R, K, W}");
+						tryAgain = true;
+						continue;
+					}
 
 					System.out.print(
 							"In which row on the player board will you place the tile(s)? Use 0-4, or -1 to put them directly in your floor line: ");
@@ -103,7 +129,7 @@ public class DeepAzulMain {
 					}
 
 					try {
-						state.makeMove(tileLocation, tileChoice, rowChoice, true, false, in);
+						state.makeMove(tileLocation, tileChoice, rowChoice, refillSource);
 					} catch (final IllegalArgumentException e) {
 						System.out.println(e.getMessage());
 						tryAgain = true;
@@ -116,6 +142,7 @@ public class DeepAzulMain {
 		}
 
 		in.close();
+		search.close();
 
 		System.out.println("Winning players = " + state.getWinningPlayers());
 	}
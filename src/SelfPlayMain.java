@@ -0,0 +1,115 @@
+import search.LeafParallelPlayouts;
+import search.RootParallelSearch;
+import search.Searcher;
+import search.SelfPlay;
+import search.TreeParallelSearch;
+
+/**
+ * This class contains the main method for playing the AI against itself without
+ * any user input, to compare the strength and speed of the searches. It plays
+ * the root-parallel search against the tree-parallel search.
+ * 
+ * The optional arguments are the number of games to play, how long to search
+ * for each move in milliseconds, the seed for the draws from the bag, and the
+ * number of playouts per leaf. With more than one playout per leaf, the first
+ * player becomes a single search thread that evaluates each leaf with that many
+ * playouts at once on the common fork/join pool (see
+ * {@link LeafParallelPlayouts}) instead of a root-parallel search.
+ * 
+ * @author Aaron Tetens
+ */
+public class SelfPlayMain {
+
+	private static final int DEFAULT_NUM_GAMES = 100;
+	private static final long DEFAULT_SEARCH_TIME_MILLIS = 100;
+	private static final long TABLE_BYTES = 256L * 1024 * 1024;
+
+	public static void main(final String[] args) {
+		final int numGames = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_NUM_GAMES;
+		final long searchTimeMillis = (args.length > 1) ? Long.parseLong(args[1]) : DEFAULT_SEARCH_TIME_MILLIS;
+		final long seed = (args.length > 2) ? Long.parseLong(args[2]) : System.nanoTime();
+		final int playoutsPerLeaf = (args.length > 3) ? Integer.parseInt(args[3]) : 1;
+
+		// only one player searches at a time, so both may use every core (the leaf
+		// playouts use the cores instead of more search threads)
+		final int numThreads = Runtime.getRuntime().availableProcessors();
+		final RootParallelSearch rootParallel;
+		final String rootParallelName;
+		if (playoutsPerLeaf > 1) {
+			rootParallel = new RootParallelSearch(1, TABLE_BYTES, seed + 1,
+					new LeafParallelPlayouts(playoutsPerLeaf));
+			rootParallelName = "leaf-parallel (" + playoutsPerLeaf + " playouts)";
+		} else {
+			rootParallel = new RootParallelSearch(numThreads, TABLE_BYTES / numThreads, seed + 1);
+			rootParallelName = "root-parallel";
+		}
+		final TreeParallelSearch treeParallel = new TreeParallelSearch(numThreads, seed + 2);
+
+		final String[] names = { rootParallelName, "tree-parallel" };
+		final Searcher[] players = { rootParallel, treeParallel };
+		final SelfPlay selfPlay = new SelfPlay(players, searchTimeMillis, seed);
+
+		System.out.println("Playing " + numGames + " games at " + searchTimeMillis + " ms per move (seed " + seed
+				+ ")");
+
+		// a shared win is split evenly between the winners
+		final double[] wins = new double[players.length];
+		int numUnfinished = 0;
+		final long startTime = System.currentTimeMillis();
+
+		// the searches hold worker threads, so they are closed even if a game fails
+		try {
+			for (int game = 0; game < numGames; game++) {
+				final int winningPlayersMask = selfPlay.playGame(game % players.length);
+
+				if (winningPlayersMask == 0) {
+					numUnfinished++;
+				} else {
+					for (int i = 0; i < players.length; i++) {
+						if ((winningPlayersMask & 1 << i) != 0) {
+							wins[i] += 1.0 / Integer.bitCount(winningPlayersMask);
+						}
+					}
+				}
+
+				System.out.println("Game " + (game + 1) + ": " + describeWinners(names, winningPlayersMask));
+			}
+		} finally {
+			rootParallel.close();
+			treeParallel.close();
+		}
+
+		final long elapsedMillis = Math.max(1, System.currentTimeMillis() - startTime);
+
+		for (int i = 0; i < players.length; i++) {
+			System.out.println(names[i] + " wins = " + wins[i]);
+		}
+		System.out.println("Unfinished games = " + numUnfinished);
+		System.out.println("Games per hour = " + numGames * 3600000L / elapsedMillis);
+	}
+
+	/**
+	 * @param names
+	 *            The name of each player
+	 * @param winningPlayersMask
+	 *            The winners of a game, as in {@link SelfPlay#playGame(int)}
+	 * @return The names of the winners, or a note that the game was not finished
+	 */
+	private static String describeWinners(final String[] names, final int winningPlayersMask) {
+		if (winningPlayersMask == 0) {
+			return "not finished (no tiles left to draw)";
+		}
+
+		final StringBuilder winners = new StringBuilder();
+		for (int i = 0; i < names.length; i++) {
+			if ((winningPlayersMask & 1 << i) != 0) {
+				if (winners.length() > 0) {
+					winners.append(", ");
+				}
+				winners.append(names[i]);
+			}
+		}
+
+		return winners + " won";
+	}
+}
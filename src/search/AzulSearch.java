@@ -0,0 +1,421 @@
+package search;
+
+import state.AzulState;
+import state.Move;
+import state.MoveRecord;
+import state.RandomSource;
+import state.ThreadLocalRandomSource;
+
+/**
+ * A Monte Carlo tree search (UCT) for Azul that keeps its statistics in a
+ * {@link TranspositionTable} instead of in tree nodes. Positions are looked up
+ * by their canonical Zobrist key (see
+ * {@link AzulState#getCanonicalZobristKey()}), so every move order that leads
+ * to the same position shares the same statistics, and the tree is really a
+ * directed acyclic graph. Only one of several displays with the same tiles is
+ * ever expanded.
+ * 
+ * Just like the original search, the end of a round is treated as a leaf: the
+ * random refill of the displays makes it impossible to expand past it, so
+ * every visit to such a position is evaluated by a random playout to the end of
+ * the game instead. With {@link LeafParallelPlayouts}, each visit is
+ * evaluated by the average of several playouts run at once instead.
+ * 
+ * The search walks down and back up a single working copy of the root with
+ * {@link AzulState#applyMove(int, MoveRecord)} and
+ * {@link AzulState#undoMove(MoveRecord)}, so it does not create a state per
+ * node. An instance is not thread-safe, but several instances may share a
+ * table. Each instance draws its random numbers from its own
+ * {@link RandomSource}, which is also handed to the states it plays out.
+ * 
+ * @author Aaron Tetens
+ */
+public class AzulSearch implements Searcher {
+
+	/**
+	 * The exploration constant used by default in the UCT formula
+	 */
+	public static final double DEFAULT_EXPLORATION = Math.sqrt(2);
+
+	private final TranspositionTable table;
+	private final double exploration;
+	private final RandomSource random;
+
+	private final int[][] moves;
+	private final long[][] childKeys;
+	private final MoveRecord[] records;
+	private final long[] pathKeys;
+	private final int[] pathPlayers;
+
+	private final MoveRecord scratchRecord;
+	private final TranspositionTable.Statistics statistics;
+	private final int[] playoutMoves;
+
+	// null when each leaf is evaluated by a single playout on this thread
+	private final LeafParallelPlayouts leafPlayouts;
+	private final double[] leafRewards;
+
+	/**
+	 * @param table
+	 *            The table in which to keep the statistics (it may be kept between
+	 *            searches, since its keys stay valid for the whole game)
+	 */
+	public AzulSearch(final TranspositionTable table) {
+		this(table, DEFAULT_EXPLORATION, ThreadLocalRandomSource.INSTANCE.split());
+	}
+
+	/**
+	 * @param table
+	 *            The table in which to keep the statistics (it may be kept between
+	 *            searches, since its keys stay valid for the whole game)
+	 * @param exploration
+	 *            The exploration constant used in the UCT formula
+	 * @param random
+	 *            The generator used for random moves and refills in playouts
+	 */
+	public AzulSearch(final TranspositionTable table, final double exploration, final RandomSource random) {
+		this(table, exploration, random, null);
+	}
+
+	/**
+	 * @param table
+	 *            The table in which to keep the statistics (it may be kept between
+	 *            searches, since its keys stay valid for the whole game)
+	 * @param exploration
+	 *            The exploration constant used in the UCT formula
+	 * @param random
+	 *            The generator used for random moves and refills in playouts
+	 * @param leafPlayouts
+	 *            Evaluates each leaf with several playouts at once, whose average
+	 *            is recorded as a single visit (or null to use a single playout
+	 *            on the search thread)
+	 */
+	public AzulSearch(final TranspositionTable table, final double exploration, final RandomSource random,
+			final LeafParallelPlayouts leafPlayouts) {
+		this.table = table;
+		this.exploration = exploration;
+		this.random = random;
+
+		this.moves = new int[SearchSupport.MAX_DEPTH][Move.MAX_MOVES];
+		this.childKeys = new long[SearchSupport.MAX_DEPTH][Move.MAX_MOVES];
+		this.records = new MoveRecord[SearchSupport.MAX_DEPTH];
+		for (int i = 0; i < SearchSupport.MAX_DEPTH; i++) {
+			this.records[i] = new MoveRecord();
+		}
+		this.pathKeys = new long[SearchSupport.MAX_DEPTH + 1];
+		this.pathPlayers = new int[SearchSupport.MAX_DEPTH + 1];
+
+		this.scratchRecord = new MoveRecord();
+		this.statistics = new TranspositionTable.Statistics();
+		this.playoutMoves = new int[Move.MAX_MOVES];
+
+		this.leafPlayouts = leafPlayouts;
+		this.leafRewards = new double[LeafParallelPlayouts.MAX_PLAYERS];
+	}
+
+	/**
+	 * Searches from the given state for the given amount of time.
+	 * 
+	 * @param root
+	 *            The state to search from, which is not changed (the current
+	 *            round must not be over)
+	 * @param timeLimitMillis
+	 *            How long to search for, in milliseconds
+	 * @return The child of the root that was visited the most
+	 * @throws IllegalArgumentException
+	 *             If there are no moves to make from the root
+	 */
+	@Override
+	public AzulState search(final AzulState root, final long timeLimitMillis) throws IllegalArgumentException {
+		if (root.isRoundOver()) {
+			throw new IllegalArgumentException("Tried to search from a state with no moves to make");
+		}
+
+		final AzulState state = new AzulState(root);
+		this.searchUntil(state, System.currentTimeMillis() + timeLimitMillis);
+
+		return root.getNextState(this.getMostVisitedMove(state));
+	}
+
+	/**
+	 * Runs the given number of search iterations from the given state, instead of
+	 * searching for an amount of time. A search with the same seed, table, and
+	 * number of iterations always picks the same move, so it can be replayed
+	 * exactly.
+	 * 
+	 * @param root
+	 *            The state to search from, which is not changed (the current
+	 *            round must not be over)
+	 * @param numIterations
+	 *            The number of iterations to run (at least 1)
+	 * @return The child of the root that was visited the most
+	 * @throws IllegalArgumentException
+	 *             If there are no moves to make from the root, or if the number of
+	 *             iterations is less than 1
+	 */
+	public AzulState searchIterations(final AzulState root, final int numIterations)
+			throws IllegalArgumentException {
+		if (root.isRoundOver()) {
+			throw new IllegalArgumentException("Tried to search from a state with no moves to make");
+		}
+		if (numIterations < 1) {
+			throw new IllegalArgumentException(
+					"Tried to search with " + numIterations + " iterations (at least 1 required)");
+		}
+
+		final AzulState state = new AzulState(root);
+		this.runIterations(state, numIterations);
+
+		return root.getNextState(this.getMostVisitedMove(state));
+	}
+
+	/**
+	 * Runs search iterations from the given state until the given time, adding to
+	 * the statistics in the table. The state is changed while the search runs, but
+	 * is left the way it was found (except that it is given this search's random
+	 * number generator, see {@link AzulState#setRandom(RandomSource)}). Each call
+	 * counts as a new search for the table (see
+	 * {@link TranspositionTable#newSearch()}), so that entries from earlier
+	 * searches are replaced first.
+	 * 
+	 * @param state
+	 *            The state to search from (the current round must not be over)
+	 * @param deadline
+	 *            The time to stop at, as in {@link System#currentTimeMillis()}
+	 */
+	public void searchUntil(final AzulState state, final long deadline) {
+		this.table.newSearch();
+		state.setRandom(this.random);
+
+		do {
+			this.runIteration(state);
+		} while (System.currentTimeMillis() < deadline);
+	}
+
+	/**
+	 * Runs the given number of search iterations from the given state, adding to
+	 * the statistics in the table, in the same way as
+	 * {@link AzulSearch#searchUntil(AzulState, long)}.
+	 * 
+	 * @param state
+	 *            The state to search from (the current round must not be over)
+	 * @param numIterations
+	 *            The number of iterations to run (at least 1)
+	 */
+	public void runIterations(final AzulState state, final int numIterations) {
+		this.table.newSearch();
+		state.setRandom(this.random);
+
+		for (int i = 0; i < numIterations; i++) {
+			this.runIteration(state);
+		}
+	}
+
+	/**
+	 * @param state
+	 *            A state that has been searched from (left unchanged)
+	 * @param move
+	 *            A legal move from the given state
+	 * @return The number of times the position reached by the given move has been
+	 *         visited
+	 */
+	public int getVisits(final AzulState state, final int move) {
+		state.applyMove(move, this.scratchRecord);
+		final int visits = this.table.getVisits(state.getCanonicalZobristKey());
+		state.undoMove(this.scratchRecord);
+
+		return visits;
+	}
+
+	/**
+	 * Does nothing, since this search runs on the calling thread and holds no
+	 * other resources (the table is owned by the caller).
+	 */
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * Runs a single iteration of the search (selection, expansion, simulation, and
+	 * backpropagation). The state is left the way it was found.
+	 * 
+	 * @param state
+	 *            The working copy of the root
+	 */
+	private void runIteration(final AzulState state) {
+		int depth = 0;
+		this.pathKeys[0] = state.getCanonicalZobristKey();
+		this.pathPlayers[0] = state.getLastPlayer();
+
+		// selection, stopping at the end of the round or at a position that the
+		// table has not seen yet (which is the one being expanded)
+		while (!state.isRoundOver()) {
+			final int numMoves = this.generateChildren(state, depth);
+			final int index = this.selectChild(depth, numMoves);
+
+			state.applyMove(this.moves[depth][index], this.records[depth]);
+			this.pathKeys[depth + 1] = this.childKeys[depth][index];
+			depth++;
+
+			this.pathPlayers[depth] = state.getLastPlayer();
+
+			if (this.table.getVisits(this.pathKeys[depth]) == 0) {
+				break;
+			}
+		}
+
+		// simulation
+		if (this.leafPlayouts == null) {
+			final int winningPlayersMask = playout(new AzulState(state), this.playoutMoves, this.random);
+			for (int player = 0; player < this.leafRewards.length; player++) {
+				this.leafRewards[player] = getReward(winningPlayersMask, player);
+			}
+		} else {
+			this.leafPlayouts.evaluate(state, this.random, this.leafRewards);
+		}
+
+		// backpropagation, where each position is rewarded from the point of view of
+		// the player who moved into it
+		for (int i = 0; i <= depth; i++) {
+			final int player = this.pathPlayers[i];
+			this.table.addResult(this.pathKeys[i], (player == -1) ? 0 : this.leafRewards[player]);
+		}
+
+		for (int i = depth - 1; i >= 0; i--) {
+			state.undoMove(this.records[i]);
+		}
+	}
+
+	/**
+	 * Generates the moves from the given state, along with the key of the position
+	 * that each of them leads to, so that the keys are only worked out once per
+	 * visit.
+	 * 
+	 * @param state
+	 *            The current position (left unchanged)
+	 * @param depth
+	 *            The depth of the current position, which picks the buffers to
+	 *            fill in
+	 * @return The number of moves
+	 */
+	private int generateChildren(final AzulState state, final int depth) {
+		final int[] moves = this.moves[depth];
+		final long[] keys = this.childKeys[depth];
+		final int numMoves = state.generateDistinctMoves(moves);
+
+		for (int i = 0; i < numMoves; i++) {
+			state.applyMove(moves[i], this.scratchRecord);
+			keys[i] = state.getCanonicalZobristKey();
+			state.undoMove(this.scratchRecord);
+		}
+
+		return numMoves;
+	}
+
+	/**
+	 * Picks the move to follow from the position at the given depth: the first
+	 * move leading to a position that the table has not seen, or else the move
+	 * with the highest UCT value.
+	 * 
+	 * @param depth
+	 *            The depth of the current position, whose moves and child keys have
+	 *            been generated
+	 * @param numMoves
+	 *            The number of legal moves
+	 * @return The index of the chosen move
+	 */
+	private int selectChild(final int depth, final int numMoves) {
+		final long[] keys = this.childKeys[depth];
+		final double logParentVisits = Math.log(Math.max(1, this.table.getVisits(this.pathKeys[depth])));
+
+		int bestIndex = 0;
+		double bestValue = Double.NEGATIVE_INFINITY;
+
+		for (int i = 0; i < numMoves; i++) {
+			this.table.lookup(keys[i], this.statistics);
+
+			final int visits = this.statistics.getVisits();
+			if (visits == 0) {
+				return i;
+			}
+
+			final double value = this.statistics.getTotalReward() / visits
+					+ this.exploration * Math.sqrt(logParentVisits / visits);
+			if (value > bestValue) {
+				bestValue = value;
+				bestIndex = i;
+			}
+		}
+
+		return bestIndex;
+	}
+
+	/**
+	 * @param state
+	 *            The working copy of the root (left unchanged)
+	 * @return The move from the root whose resulting position was visited the most
+	 */
+	private int getMostVisitedMove(final AzulState state) {
+		final int[] moves = this.moves[0];
+		final int numMoves = state.generateDistinctMoves(moves);
+
+		int bestMove = moves[0];
+		int mostVisits = -1;
+
+		for (int i = 0; i < numMoves; i++) {
+			final int visits = this.getVisits(state, moves[i]);
+
+			if (visits > mostVisits) {
+				mostVisits = visits;
+				bestMove = moves[i];
+			}
+		}
+
+		return bestMove;
+	}
+
+	/**
+	 * Plays random moves (and random refills) until the game is over.
+	 * 
+	 * @param state
+	 *            The state to play out, which is changed in place
+	 * @param moves
+	 *            Is assumed to have room for at least {@link Move#MAX_MOVES} moves
+	 * @param random
+	 *            The generator used to pick the moves (refills use the generator
+	 *            of the state)
+	 * @return The winners of the game, as in
+	 *         {@link AzulState#getWinningPlayersMask()} (0 if the game could not
+	 *         be finished because there were no tiles left to draw)
+	 */
+	static int playout(final AzulState state, final int[] moves, final RandomSource random) {
+		while (!state.isGameOver()) {
+			if (state.isRoundOver()) {
+				state.refillDisplaysRandomly();
+			}
+
+			final int numMoves = state.generateMoves(moves);
+			if (numMoves == 0) {
+				break;
+			}
+
+			state.applyMove(moves[random.nextInt(numMoves)]);
+		}
+
+		return state.getWinningPlayersMask();
+	}
+
+	/**
+	 * @param winningPlayersMask
+	 *            The winners of a playout, as in
+	 *            {@link AzulState#getWinningPlayersMask()}
+	 * @param player
+	 *            The player to reward (-1 if no one has moved yet)
+	 * @return 1 split evenly between the winners if the given player is one of
+	 *         them, or 0 otherwise
+	 */
+	static double getReward(final int winningPlayersMask, final int player) {
+		final int numWinners = SearchSupport.getNumWinnersSharing(winningPlayersMask, player);
+		return (numWinners == 0) ? 0 : 1.0 / numWinners;
+	}
+}
@@ -0,0 +1,128 @@
+package search;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import state.AzulState;
+import state.Move;
+import state.RandomSource;
+
+/**
+ * Evaluates a leaf of the search with several random playouts at once (leaf
+ * parallelism) instead of just one. A leaf is usually the end of a round, and
+ * the random refill that follows it makes a single playout a very noisy
+ * estimate of its value, so averaging several playouts, each with its own
+ * refills, gives the search a much steadier value per visit. The playouts run
+ * on a {@link ForkJoinPool}, so a single search thread can put otherwise idle
+ * cores to work.
+ * 
+ * Every playout gets its own copy of the leaf and its own source of random
+ * numbers, split from the search's source before the playouts start, so the
+ * results do not depend on how the pool schedules them.
+ * 
+ * @author Aaron Tetens
+ */
+public class LeafParallelPlayouts {
+
+	/**
+	 * The length of the reward arrays filled in by
+	 * {@link LeafParallelPlayouts#evaluate(AzulState, RandomSource, double[])}
+	 */
+	public static final int MAX_PLAYERS = 4;
+
+	private final ForkJoinPool pool;
+	private final int numPlayouts;
+
+	/**
+	 * Runs the playouts on the common pool.
+	 * 
+	 * @param numPlayouts
+	 *            The number of playouts per leaf
+	 */
+	public LeafParallelPlayouts(final int numPlayouts) {
+		this(ForkJoinPool.commonPool(), numPlayouts);
+	}
+
+	/**
+	 * @param pool
+	 *            The pool to run the playouts on
+	 * @param numPlayouts
+	 *            The number of playouts per leaf
+	 */
+	public LeafParallelPlayouts(final ForkJoinPool pool, final int numPlayouts) {
+		if (numPlayouts < 1) {
+			throw new IllegalArgumentException(
+					"Tried to evaluate leaves with " + numPlayouts + " playouts (at least 1 required)");
+		}
+
+		this.pool = pool;
+		this.numPlayouts = numPlayouts;
+	}
+
+	/**
+	 * Plays out the given state several times at once and averages the rewards of
+	 * each player (see {@link AzulSearch#getReward(int, int)}).
+	 * 
+	 * @param leaf
+	 *            The state to play out (left unchanged)
+	 * @param random
+	 *            The source from which the source of every playout is split
+	 * @param rewards
+	 *            Is assumed to have a length of at least
+	 *            {@link LeafParallelPlayouts#MAX_PLAYERS}; filled in with the
+	 *            average reward of each player
+	 */
+	public void evaluate(final AzulState leaf, final RandomSource random, final double[] rewards) {
+		final PlayoutTask[] tasks = new PlayoutTask[this.numPlayouts];
+		for (int i = 0; i < this.numPlayouts; i++) {
+			final AzulState state = new AzulState(leaf);
+			state.setRandom(random.split());
+			tasks[i] = new PlayoutTask(state);
+		}
+
+		this.pool.invoke(new RecursiveAction() {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+
+		for (int player = 0; player < MAX_PLAYERS; player++) {
+			double totalReward = 0;
+			for (final PlayoutTask task : tasks) {
+				totalReward += AzulSearch.getReward(task.winningPlayersMask, player);
+			}
+			rewards[player] = totalReward / this.numPlayouts;
+		}
+	}
+
+	/**
+	 * @return The number of playouts per leaf
+	 */
+	public int getNumPlayouts() {
+		return this.numPlayouts;
+	}
+
+	/**
+	 * A single playout of its own copy of the leaf.
+	 */
+	private static final class PlayoutTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final AzulState state;
+		private int winningPlayersMask;
+
+		PlayoutTask(final AzulState state) {
+			this.state = state;
+		}
+
+		@Override
+		protected void compute() {
+			this.winningPlayersMask = AzulSearch.playout(this.state, new int[Move.MAX_MOVES], this.state.getRandom());
+		}
+	}
+}
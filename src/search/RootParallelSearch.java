@@ -0,0 +1,196 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import state.AzulState;
+import state.Move;
+import state.RandomSource;
+import state.SplittableRandomSource;
+
+/**
+ * Runs several independent searches from the same root at once, one per worker
+ * thread (root parallelism). Each worker has its own {@link AzulSearch},
+ * transposition table, random number generator, and copy of the root, so the
+ * workers never share any state while they search. When time is up, the visit
+ * counts of each move from the root are added up across the workers, and the
+ * move with the most visits in total is played.
+ * 
+ * @author Aaron Tetens
+ */
+public class RootParallelSearch implements Searcher {
+
+	private final ExecutorService executor;
+	private final AzulSearch[] workers;
+
+	/**
+	 * @param numThreads
+	 *            The number of worker threads
+	 * @param tableBytesPerThread
+	 *            The most memory that each worker's transposition table may use
+	 * @param seed
+	 *            The seed from which every worker's random number generator is
+	 *            split
+	 */
+	public RootParallelSearch(final int numThreads, final long tableBytesPerThread, final long seed) {
+		this(numThreads, tableBytesPerThread, seed, null);
+	}
+
+	/**
+	 * @param numThreads
+	 *            The number of worker threads
+	 * @param tableBytesPerThread
+	 *            The most memory that each worker's transposition table may use
+	 * @param seed
+	 *            The seed from which every worker's random number generator is
+	 *            split
+	 * @param leafPlayouts
+	 *            Evaluates each leaf of every worker with several playouts at once
+	 *            (or null to use a single playout on the worker thread), as in
+	 *            {@link AzulSearch#AzulSearch(TranspositionTable, double, RandomSource, LeafParallelPlayouts)}
+	 */
+	public RootParallelSearch(final int numThreads, final long tableBytesPerThread, final long seed,
+			final LeafParallelPlayouts leafPlayouts) {
+		if (numThreads < 1) {
+			throw new IllegalArgumentException(
+					"Tried to search with " + numThreads + " threads (at least 1 required)");
+		}
+
+		this.executor = Executors.newFixedThreadPool(numThreads);
+		this.workers = new AzulSearch[numThreads];
+
+		final RandomSource random = new SplittableRandomSource(seed);
+		for (int i = 0; i < numThreads; i++) {
+			this.workers[i] = new AzulSearch(new TranspositionTable(tableBytesPerThread),
+					AzulSearch.DEFAULT_EXPLORATION, random.split(), leafPlayouts);
+		}
+	}
+
+	/**
+	 * Searches from the given state on every worker thread for the given amount of
+	 * time.
+	 * 
+	 * @param root
+	 *            The state to search from, which is not changed (the current
+	 *            round must not be over)
+	 * @param timeLimitMillis
+	 *            How long to search for, in milliseconds
+	 * @return The child of the root with the most visits across all of the workers
+	 * @throws IllegalArgumentException
+	 *             If there are no moves to make from the root
+	 */
+	@Override
+	public AzulState search(final AzulState root, final long timeLimitMillis) throws IllegalArgumentException {
+		return this.searchOnWorkers(root, System.currentTimeMillis() + timeLimitMillis, 0);
+	}
+
+	/**
+	 * Runs the given number of search iterations from the given state on every
+	 * worker thread, instead of searching for an amount of time. Since the workers
+	 * share nothing, a search with the same seed, tables, and number of iterations
+	 * always picks the same move, no matter how the threads are scheduled.
+	 * 
+	 * @param root
+	 *            The state to search from, which is not changed (the current
+	 *            round must not be over)
+	 * @param iterationsPerWorker
+	 *            The number of iterations that each worker runs (at least 1)
+	 * @return The child of the root with the most visits across all of the workers
+	 * @throws IllegalArgumentException
+	 *             If there are no moves to make from the root, or if the number of
+	 *             iterations is less than 1
+	 */
+	public AzulState searchIterations(final AzulState root, final int iterationsPerWorker)
+			throws IllegalArgumentException {
+		if (iterationsPerWorker < 1) {
+			throw new IllegalArgumentException(
+					"Tried to search with " + iterationsPerWorker + " iterations (at least 1 required)");
+		}
+
+		return this.searchOnWorkers(root, 0, iterationsPerWorker);
+	}
+
+	/**
+	 * @param root
+	 *            The state to search from, which is not changed
+	 * @param deadline
+	 *            The time to stop at, as in {@link System#currentTimeMillis()}
+	 *            (ignored if a number of iterations is given)
+	 * @param iterationsPerWorker
+	 *            The number of iterations that each worker runs, or 0 to search
+	 *            until the deadline
+	 * @return The child of the root with the most visits across all of the workers
+	 * @throws IllegalArgumentException
+	 *             If there are no moves to make from the root
+	 */
+	private AzulState searchOnWorkers(final AzulState root, final long deadline, final int iterationsPerWorker)
+			throws IllegalArgumentException {
+		if (root.isRoundOver()) {
+			throw new IllegalArgumentException("Tried to search from a state with no moves to make");
+		}
+
+		// every worker sees the moves in the same order, so their visit counts can be
+		// added up by index
+		final int[] moves = new int[Move.MAX_MOVES];
+		final int numMoves = root.generateDistinctMoves(moves);
+
+		final List<Future<int[]>> results = new ArrayList<>();
+		for (final AzulSearch worker : this.workers) {
+			final AzulState state = new AzulState(root);
+
+			results.add(this.executor.submit(new Callable<int[]>() {
+
+				@Override
+				public int[] call() {
+					if (iterationsPerWorker > 0) {
+						worker.runIterations(state, iterationsPerWorker);
+					} else {
+						worker.searchUntil(state, deadline);
+					}
+
+					final int[] visits = new int[numMoves];
+					for (int i = 0; i < numMoves; i++) {
+						visits[i] = worker.getVisits(state, moves[i]);
+					}
+					return visits;
+				}
+			}));
+		}
+
+		final long[] totalVisits = new long[numMoves];
+		for (final Future<int[]> result : results) {
+			final int[] visits = SearchSupport.getResult(result);
+			for (int i = 0; i < numMoves; i++) {
+				totalVisits[i] += visits[i];
+			}
+		}
+
+		int bestIndex = 0;
+		for (int i = 1; i < numMoves; i++) {
+			if (totalVisits[i] > totalVisits[bestIndex]) {
+				bestIndex = i;
+			}
+		}
+
+		return root.getNextState(moves[bestIndex]);
+	}
+
+	/**
+	 * @return The number of worker threads
+	 */
+	public int getNumThreads() {
+		return this.workers.length;
+	}
+
+	/**
+	 * Stops the worker threads once any search in progress has finished.
+	 */
+	@Override
+	public void close() {
+		this.executor.shutdown();
+	}
+}
@@ -0,0 +1,138 @@
+package search;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A node of the tree shared by the threads of a {@link TreeParallelSearch}. The
+ * node does not hold its state; threads walk a working copy of the root down
+ * the tree by applying the moves of the nodes they pass through.
+ * 
+ * None of the fields of a node are guarded by locks. The statistics are atomic
+ * counters, and a child is only ever set once, with a compare-and-set, so two
+ * threads that expand the same child at the same time end up sharing whichever
+ * node got there first.
+ * 
+ * @author Aaron Tetens
+ */
+class SearchNode {
+
+	/**
+	 * The reward for a win, in the fixed-point units used by
+	 * {@link SearchNode#getTotalReward()}. It is divisible by every possible
+	 * number of winners (1-4), so a shared win is split evenly without rounding.
+	 */
+	static final int REWARD_UNITS = 12;
+
+	private final int lastPlayer;
+	private final int[] moves;
+	private final AtomicReferenceArray<SearchNode> children;
+
+	private final AtomicInteger visits;
+	private final AtomicLong totalReward;
+
+	/**
+	 * @param lastPlayer
+	 *            The player who moved into this node (-1 for the root of a game)
+	 * @param moves
+	 *            The moves that can be made from this node (empty if it is a leaf)
+	 * @param numMoves
+	 *            The number of moves
+	 */
+	SearchNode(final int lastPlayer, final int[] moves, final int numMoves) {
+		this.lastPlayer = lastPlayer;
+		this.moves = new int[numMoves];
+		System.arraycopy(moves, 0, this.moves, 0, numMoves);
+		this.children = new AtomicReferenceArray<>(numMoves);
+
+		this.visits = new AtomicInteger();
+		this.totalReward = new AtomicLong();
+	}
+
+	/**
+	 * @return The player who moved into this node
+	 */
+	int getLastPlayer() {
+		return this.lastPlayer;
+	}
+
+	/**
+	 * @return The number of moves that can be made from this node
+	 */
+	int getNumMoves() {
+		return this.moves.length;
+	}
+
+	/**
+	 * @param index
+	 *            Is assumed to be less than the number of moves
+	 * @return The move with the given index
+	 */
+	int getMove(final int index) {
+		return this.moves[index];
+	}
+
+	/**
+	 * @param index
+	 *            Is assumed to be less than the number of moves
+	 * @return The child reached by the move with the given index, or null if it
+	 *         has not been expanded yet
+	 */
+	SearchNode getChild(final int index) {
+		return this.children.get(index);
+	}
+
+	/**
+	 * Sets the child reached by the move with the given index, unless another
+	 * thread has already done so.
+	 * 
+	 * @param index
+	 *            Is assumed to be less than the number of moves
+	 * @param child
+	 *            The new child
+	 * @return The child that ended up in the tree (the given one, or the one that
+	 *         another thread set first)
+	 */
+	SearchNode setChild(final int index, final SearchNode child) {
+		if (this.children.compareAndSet(index, null, child)) {
+			return child;
+		}
+		return this.children.get(index);
+	}
+
+	/**
+	 * Counts a visit to this node. This is done on the way down, before the result
+	 * of the visit is known, so until the reward is added the visit counts as a
+	 * loss (a virtual loss), which steers other threads toward other nodes.
+	 */
+	void addVisit() {
+		this.visits.incrementAndGet();
+	}
+
+	/**
+	 * @param reward
+	 *            The reward of a finished visit, in units of
+	 *            {@link SearchNode#REWARD_UNITS} per win
+	 */
+	void addReward(final long reward) {
+		this.totalReward.addAndGet(reward);
+	}
+
+	/**
+	 * @return The number of visits to this node, including those still in
+	 *         progress
+	 */
+	int getVisits() {
+		return this.visits.get();
+	}
+
+	/**
+	 * @return The sum of the rewards of the finished visits to this node, from the
+	 *         point of view of the player who moved into it, in units of
+	 *         {@link SearchNode#REWARD_UNITS} per win
+	 */
+	long getTotalReward() {
+		return this.totalReward.get();
+	}
+}
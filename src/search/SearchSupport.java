@@ -0,0 +1,59 @@
+package search;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Constants and helpers shared by the searches in this package.
+ * 
+ * @author Aaron Tetens
+ */
+final class SearchSupport {
+
+	/**
+	 * The most moves that can be made from the start of a search to the end of
+	 * the round, since every move takes at least one tile and a round never
+	 * starts with more than 4 * 9 tiles in play
+	 */
+	static final int MAX_DEPTH = 40;
+
+	private SearchSupport() {
+	}
+
+	/**
+	 * Waits for the result of a search thread.
+	 * 
+	 * @param result
+	 *            The result of a worker
+	 * @return The value computed by the worker
+	 * @throws IllegalStateException
+	 *             If the waiting thread is interrupted or the worker failed
+	 */
+	static <T> T getResult(final Future<T> result) throws IllegalStateException {
+		try {
+			return result.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a search thread", e);
+		} catch (final ExecutionException e) {
+			throw new IllegalStateException("A search thread failed", e.getCause());
+		}
+	}
+
+	/**
+	 * @param winningPlayersMask
+	 *            The winners of a playout, as in
+	 *            {@link state.AzulState#getWinningPlayersMask()}
+	 * @param player
+	 *            The player to reward (-1 if no one has moved yet)
+	 * @return The number of winners that the given player shares the win with
+	 *         (including themselves), or 0 if the given player did not win
+	 */
+	static int getNumWinnersSharing(final int winningPlayersMask, final int player) {
+		if (player == -1 || (winningPlayersMask & 1 << player) == 0) {
+			return 0;
+		}
+
+		return Integer.bitCount(winningPlayersMask);
+	}
+}
@@ -0,0 +1,37 @@
+package search;
+
+import state.AzulState;
+
+/**
+ * Something that picks a move for the current player of a game, such as one of
+ * the searches in this package. This lets a game be played between different
+ * searches (see {@link SelfPlay}).
+ * 
+ * A searcher may hold threads or other resources between searches, so it should
+ * be closed once it is no longer needed (for example, with try-with-resources).
+ * 
+ * @author Aaron Tetens
+ */
+public interface Searcher extends AutoCloseable {
+
+	/**
+	 * Searches from the given state for the given amount of time.
+	 * 
+	 * @param root
+	 *            The state to search from, which is not changed (the current
+	 *            round must not be over)
+	 * @param timeLimitMillis
+	 *            How long to search for, in milliseconds
+	 * @return The state after the chosen move
+	 * @throws IllegalArgumentException
+	 *             If there are no moves to make from the root
+	 */
+	AzulState search(AzulState root, long timeLimitMillis) throws IllegalArgumentException;
+
+	/**
+	 * Releases any threads held by this searcher once any search in progress has
+	 * finished. The searcher should not be used after it is closed.
+	 */
+	@Override
+	void close();
+}
@@ -0,0 +1,100 @@
+package search;
+
+import state.AzulState;
+import state.RandomRefillSource;
+import state.RandomSource;
+import state.RefillSource;
+import state.SplittableRandomSource;
+
+/**
+ * Plays complete games between searches without any input or output, with the
+ * displays refilled by random draws from the bag. This makes it possible to
+ * play many games in a row to compare the strength or speed of different
+ * searches.
+ * 
+ * The draws of each game come from their own source of random numbers, split
+ * from the seed given to the constructor, so the same seed always gives the
+ * same draws for the same game no matter how the searches use randomness
+ * themselves. To keep the comparison fair, the players are rotated between the
+ * seats from one game to the next, so every player gets to go first.
+ * 
+ * @author Aaron Tetens
+ */
+public class SelfPlay {
+
+	private final Searcher[] players;
+	private final long timeLimitMillis;
+	private final RandomSource random;
+
+	/**
+	 * @param players
+	 *            The searches that play against each other (2-4 of them, one per
+	 *            seat)
+	 * @param timeLimitMillis
+	 *            How long each player searches for each move, in milliseconds
+	 * @param seed
+	 *            The seed from which the draws of every game are split
+	 * @throws IllegalArgumentException
+	 *             If there are not 2-4 players
+	 */
+	public SelfPlay(final Searcher[] players, final long timeLimitMillis, final long seed)
+			throws IllegalArgumentException {
+		if (players.length < 2 || players.length > 4) {
+			throw new IllegalArgumentException(
+					"Tried to start a game with " + players.length + " players (2-4 required)");
+		}
+
+		this.players = players.clone();
+		this.timeLimitMillis = timeLimitMillis;
+		this.random = new SplittableRandomSource(seed);
+	}
+
+	/**
+	 * Plays a single game to the end. Games should be played in the same order to
+	 * get the same draws from the same seed.
+	 * 
+	 * @param rotation
+	 *            How many seats to rotate the players by (player i sits in seat (i
+	 *            + rotation) % number of players)
+	 * @return The players who won, as a mask where bit i stands for player i (0 if
+	 *         the game could not be finished because there were no tiles left to
+	 *         draw)
+	 */
+	public int playGame(final int rotation) {
+		final int numPlayers = this.players.length;
+		final RefillSource refillSource = new RandomRefillSource(this.random.split());
+
+		AzulState state = new AzulState(numPlayers, refillSource);
+
+		while (!state.isGameOver()) {
+			if (state.isRoundOver()) {
+				refillSource.refill(state);
+
+				// the bag and the lid were both empty, so nobody can move
+				if (state.isRoundOver()) {
+					return 0;
+				}
+			}
+
+			final int seat = state.getCurrentPlayer();
+			final int player = ((seat - rotation) % numPlayers + numPlayers) % numPlayers;
+			state = this.players[player].search(state, this.timeLimitMillis);
+		}
+
+		int winningPlayersMask = 0;
+		for (int seat = 0; seat < numPlayers; seat++) {
+			if ((state.getWinningPlayersMask() & 1 << seat) != 0) {
+				winningPlayersMask |= 1 << ((seat - rotation) % numPlayers + numPlayers) % numPlayers;
+			}
+		}
+
+		return winningPlayersMask;
+	}
+
+	/**
+	 * @return The number of players
+	 */
+	public int getNumPlayers() {
+		return this.players.length;
+	}
+}
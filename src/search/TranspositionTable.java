@@ -0,0 +1,224 @@
+package search;
+
+/**
+ * A fixed-size table of search statistics keyed by the canonical Zobrist hash
+ * of a position (see {@link state.AzulState#getCanonicalZobristKey()}), which
+ * does not depend on the order of the displays. Since every path to the same
+ * position shares the same entry, the search tree becomes a directed acyclic
+ * graph, and a position that is reached through different move orders only has
+ * to be learned about once.
+ * 
+ * The table never grows past the number of entries chosen when it is created.
+ * Entries are kept in buckets of two, and when a new position does not fit in
+ * its bucket, an entry that was not visited in the current search is replaced
+ * first, and otherwise the entry with fewer visits. The table is meant to be
+ * kept for a whole game, so positions from earlier moves and rounds age out
+ * instead of holding on to their slots because of their visit counts.
+ * 
+ * The table is safe to share between threads. Each bucket is guarded by one of
+ * a fixed number of locks (lock striping), so threads only wait on each other
+ * when they touch buckets that share a lock.
+ * 
+ * @author Aaron Tetens
+ */
+public class TranspositionTable {
+
+	/**
+	 * The number of bytes used by a single entry (key, visits, total reward, and
+	 * generation)
+	 */
+	public static final int BYTES_PER_ENTRY = 8 + 4 + 8 + 1;
+
+	private static final int NUM_STRIPES = 64;
+
+	private final long[] keys;
+	private final int[] visits;
+	private final double[] totalRewards;
+
+	// the search in which each entry was last visited (only compared for equality
+	// with the current generation, so it may wrap around)
+	private final byte[] generations;
+	private volatile int generation;
+
+	private final int bucketMask;
+	private final Object[] locks;
+
+	/**
+	 * @param maxBytes
+	 *            The most memory that the entries of the table may use (the table
+	 *            has the largest power of two number of entries that fits, and at
+	 *            least two)
+	 */
+	public TranspositionTable(final long maxBytes) {
+		final long maxEntries = Math.max(2, Math.min(maxBytes / BYTES_PER_ENTRY, 1 << 30));
+		final int numEntries = Integer.highestOneBit((int) maxEntries);
+
+		this.keys = new long[numEntries];
+		this.visits = new int[numEntries];
+		this.totalRewards = new double[numEntries];
+		this.generations = new byte[numEntries];
+
+		this.bucketMask = numEntries / 2 - 1;
+		this.locks = new Object[NUM_STRIPES];
+		for (int i = 0; i < NUM_STRIPES; i++) {
+			this.locks[i] = new Object();
+		}
+	}
+
+	/**
+	 * @param key
+	 *            The hash of a position
+	 * @return The index of the first of the two entries in the bucket for the
+	 *         given key
+	 */
+	private int getBucket(final long key) {
+		// the low bits of a Zobrist key are already random, but mix in the high bits
+		// so that every bit of the key picks the bucket
+		return 2 * ((int) (key ^ key >>> 32) & this.bucketMask);
+	}
+
+	/**
+	 * @param bucket
+	 *            The index of the first entry in a bucket
+	 * @return The lock that guards the given bucket
+	 */
+	private Object getLock(final int bucket) {
+		return this.locks[(bucket >>> 1) & (NUM_STRIPES - 1)];
+	}
+
+	/**
+	 * @param bucket
+	 *            The index of the first entry in a bucket
+	 * @param key
+	 *            The hash of a position
+	 * @return The index of the entry for the given key, or -1 if it is not in the
+	 *         table (the caller must hold the lock for the bucket)
+	 */
+	private int find(final int bucket, final long key) {
+		if (this.visits[bucket] > 0 && this.keys[bucket] == key) {
+			return bucket;
+		}
+		if (this.visits[bucket + 1] > 0 && this.keys[bucket + 1] == key) {
+			return bucket + 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param key
+	 *            The hash of a position
+	 * @return The number of times the position has been visited (0 if it is not
+	 *         in the table)
+	 */
+	public int getVisits(final long key) {
+		final int bucket = this.getBucket(key);
+
+		synchronized (this.getLock(bucket)) {
+			final int index = this.find(bucket, key);
+			return (index == -1) ? 0 : this.visits[index];
+		}
+	}
+
+	/**
+	 * Looks up both statistics of the given position at once, taking the lock for
+	 * its bucket only once.
+	 * 
+	 * @param key
+	 *            The hash of a position
+	 * @param statistics
+	 *            Filled in with the number of visits to the position and the sum of
+	 *            their rewards (both 0 if it is not in the table)
+	 */
+	public void lookup(final long key, final Statistics statistics) {
+		final int bucket = this.getBucket(key);
+
+		synchronized (this.getLock(bucket)) {
+			final int index = this.find(bucket, key);
+
+			if (index == -1) {
+				statistics.visits = 0;
+				statistics.totalReward = 0;
+			} else {
+				statistics.visits = this.visits[index];
+				statistics.totalReward = this.totalRewards[index];
+			}
+		}
+	}
+
+	/**
+	 * Records one more visit to the given position in the current search, adding
+	 * it to the table if it is not there yet. If the bucket for the position is
+	 * full, an entry that was not visited in the current search is replaced first,
+	 * and otherwise the entry with fewer visits.
+	 * 
+	 * @param key
+	 *            The hash of a position
+	 * @param reward
+	 *            The reward of the visit, from the point of view of the player who
+	 *            moved into the position
+	 */
+	public void addResult(final long key, final double reward) {
+		final int bucket = this.getBucket(key);
+
+		synchronized (this.getLock(bucket)) {
+			int index = this.find(bucket, key);
+
+			final byte generation = (byte) this.generation;
+
+			if (index == -1) {
+				// replace an entry from an earlier search, or else the less visited entry
+				// (an empty entry has no visits)
+				final boolean isFirstOld = this.generations[bucket] != generation;
+				final boolean isSecondOld = this.generations[bucket + 1] != generation;
+
+				if (isFirstOld != isSecondOld) {
+					index = isFirstOld ? bucket : bucket + 1;
+				} else {
+					index = (this.visits[bucket] <= this.visits[bucket + 1]) ? bucket : bucket + 1;
+				}
+
+				this.keys[index] = key;
+				this.visits[index] = 0;
+				this.totalRewards[index] = 0;
+			}
+
+			this.visits[index]++;
+			this.totalRewards[index] += reward;
+			this.generations[index] = generation;
+		}
+	}
+
+	/**
+	 * Starts a new search, so that the entries visited so far are the first to be
+	 * replaced unless they are visited again. Their statistics are kept.
+	 */
+	public void newSearch() {
+		this.generation++;
+	}
+
+	/**
+	 * The statistics of a single position, filled in by
+	 * {@link TranspositionTable#lookup(long, Statistics)}. It can be reused for
+	 * every lookup, so that looking up a position does not allocate anything.
+	 */
+	public static final class Statistics {
+
+		private int visits;
+		private double totalReward;
+
+		/**
+		 * @return The number of times the position has been visited
+		 */
+		public int getVisits() {
+			return this.visits;
+		}
+
+		/**
+		 * @return The sum of the rewards for every visit to the position, from the
+		 *         point of view of the player who moved into it
+		 */
+		public double getTotalReward() {
+			return this.totalReward;
+		}
+	}
+}
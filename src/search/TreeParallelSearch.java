@@ -0,0 +1,287 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import state.AzulState;
+import state.Move;
+import state.MoveRecord;
+import state.RandomSource;
+import state.SplittableRandomSource;
+
+/**
+ * A Monte Carlo tree search (UCT) in which every worker thread searches the same
+ * tree at once (tree parallelism), so the tree is only kept in memory once no
+ * matter how many threads there are.
+ * 
+ * Threads never lock the tree. A visit is counted on each node as a thread
+ * passes through it on the way down, and the reward is only added on the way
+ * back up, so a node that a thread is still busy with looks like a loss to the
+ * other threads (virtual loss) and they tend to pick different paths. All of
+ * the statistics are atomic counters (see {@link SearchNode}), and rewards are
+ * kept in fixed-point units so that they can be added up atomically.
+ * 
+ * As in {@link AzulSearch}, the end of a round is a leaf, and only one of
+ * several displays with the same tiles is expanded. Each thread has its own
+ * working copy of the root, random number generator, and buffers.
+ * 
+ * @author Aaron Tetens
+ */
+public class TreeParallelSearch implements Searcher {
+
+	private final ExecutorService executor;
+	private final Worker[] workers;
+	private final double exploration;
+
+	/**
+	 * @param numThreads
+	 *            The number of worker threads
+	 * @param seed
+	 *            The seed from which every worker's random number generator is
+	 *            split
+	 */
+	public TreeParallelSearch(final int numThreads, final long seed) {
+		this(numThreads, seed, AzulSearch.DEFAULT_EXPLORATION);
+	}
+
+	/**
+	 * @param numThreads
+	 *            The number of worker threads
+	 * @param seed
+	 *            The seed from which every worker's random number generator is
+	 *            split
+	 * @param exploration
+	 *            The exploration constant used in the UCT formula
+	 */
+	public TreeParallelSearch(final int numThreads, final long seed, final double exploration) {
+		if (numThreads < 1) {
+			throw new IllegalArgumentException(
+					"Tried to search with " + numThreads + " threads (at least 1 required)");
+		}
+
+		this.executor = Executors.newFixedThreadPool(numThreads);
+		this.workers = new Worker[numThreads];
+		this.exploration = exploration;
+
+		final RandomSource random = new SplittableRandomSource(seed);
+		for (int i = 0; i < numThreads; i++) {
+			this.workers[i] = new Worker(random.split());
+		}
+	}
+
+	/**
+	 * Searches from the given state on every worker thread for the given amount of
+	 * time.
+	 * 
+	 * @param root
+	 *            The state to search from, which is not changed (the current
+	 *            round must not be over)
+	 * @param timeLimitMillis
+	 *            How long to search for, in milliseconds
+	 * @return The child of the root that was visited the most
+	 * @throws IllegalArgumentException
+	 *             If there are no moves to make from the root
+	 */
+	@Override
+	public AzulState search(final AzulState root, final long timeLimitMillis) throws IllegalArgumentException {
+		if (root.isRoundOver()) {
+			throw new IllegalArgumentException("Tried to search from a state with no moves to make");
+		}
+
+		final long deadline = System.currentTimeMillis() + timeLimitMillis;
+
+		final int[] moves = new int[Move.MAX_MOVES];
+		final int numMoves = root.generateDistinctMoves(moves);
+		final SearchNode rootNode = new SearchNode(root.getLastPlayer(), moves, numMoves);
+
+		final List<Future<Void>> results = new ArrayList<>();
+		for (final Worker worker : this.workers) {
+			final AzulState state = new AzulState(root);
+
+			results.add(this.executor.submit(new Callable<Void>() {
+
+				@Override
+				public Void call() {
+					worker.searchUntil(rootNode, state, deadline);
+					return null;
+				}
+			}));
+		}
+
+		for (final Future<Void> result : results) {
+			SearchSupport.getResult(result);
+		}
+
+		int bestIndex = 0;
+		int mostVisits = -1;
+		for (int i = 0; i < numMoves; i++) {
+			final SearchNode child = rootNode.getChild(i);
+			final int visits = (child == null) ? 0 : child.getVisits();
+
+			if (visits > mostVisits) {
+				mostVisits = visits;
+				bestIndex = i;
+			}
+		}
+
+		return root.getNextState(rootNode.getMove(bestIndex));
+	}
+
+	/**
+	 * @return The number of worker threads
+	 */
+	public int getNumThreads() {
+		return this.workers.length;
+	}
+
+	/**
+	 * Stops the worker threads once any search in progress has finished.
+	 */
+	@Override
+	public void close() {
+		this.executor.shutdown();
+	}
+
+	/**
+	 * @param winningPlayersMask
+	 *            The winners of a playout, as in
+	 *            {@link AzulState#getWinningPlayersMask()}
+	 * @param player
+	 *            The player to reward (-1 if no one has moved yet)
+	 * @return {@link SearchNode#REWARD_UNITS} split evenly between the winners if
+	 *         the given player is one of them, or 0 otherwise
+	 */
+	static long getRewardUnits(final int winningPlayersMask, final int player) {
+		final int numWinners = SearchSupport.getNumWinnersSharing(winningPlayersMask, player);
+		return (numWinners == 0) ? 0 : SearchNode.REWARD_UNITS / numWinners;
+	}
+
+	/**
+	 * The buffers and random number generator of one worker thread, which are
+	 * reused from one search to the next.
+	 */
+	private final class Worker {
+
+		private final RandomSource random;
+
+		private final SearchNode[] path;
+		private final MoveRecord[] records;
+		private final int[] moves;
+
+		Worker(final RandomSource random) {
+			this.random = random;
+
+			this.path = new SearchNode[SearchSupport.MAX_DEPTH + 1];
+			this.records = new MoveRecord[SearchSupport.MAX_DEPTH];
+			for (int i = 0; i < SearchSupport.MAX_DEPTH; i++) {
+				this.records[i] = new MoveRecord();
+			}
+			this.moves = new int[Move.MAX_MOVES];
+		}
+
+		/**
+		 * @param rootNode
+		 *            The root of the shared tree
+		 * @param state
+		 *            This worker's own copy of the root
+		 * @param deadline
+		 *            The time to stop at, as in {@link System#currentTimeMillis()}
+		 */
+		void searchUntil(final SearchNode rootNode, final AzulState state, final long deadline) {
+			state.setRandom(this.random);
+
+			do {
+				this.runIteration(rootNode, state);
+			} while (System.currentTimeMillis() < deadline);
+		}
+
+		/**
+		 * Runs a single iteration of the search (selection, expansion, simulation,
+		 * and backpropagation). The state is left the way it was found.
+		 * 
+		 * @param rootNode
+		 *            The root of the shared tree
+		 * @param state
+		 *            This worker's own copy of the root
+		 */
+		private void runIteration(final SearchNode rootNode, final AzulState state) {
+			int depth = 0;
+			SearchNode node = rootNode;
+			node.addVisit();
+			this.path[0] = node;
+
+			// selection, stopping at a leaf or after expanding a new node
+			while (node.getNumMoves() > 0) {
+				final int index = this.selectChild(node);
+				state.applyMove(node.getMove(index), this.records[depth]);
+
+				SearchNode child = node.getChild(index);
+				final boolean isNew = child == null;
+				if (isNew) {
+					// the end of the round is a leaf, so it gets no moves
+					final int numMoves = state.isRoundOver() ? 0 : state.generateDistinctMoves(this.moves);
+					child = node.setChild(index, new SearchNode(state.getLastPlayer(), this.moves, numMoves));
+				}
+
+				// the visit counts as a loss until its reward is added (virtual loss)
+				child.addVisit();
+				this.path[++depth] = child;
+				node = child;
+
+				if (isNew) {
+					break;
+				}
+			}
+
+			// simulation
+			final int winningPlayersMask = AzulSearch.playout(new AzulState(state), this.moves, this.random);
+
+			// backpropagation, where each node is rewarded from the point of view of the
+			// player who moved into it
+			for (int i = 0; i <= depth; i++) {
+				this.path[i].addReward(getRewardUnits(winningPlayersMask, this.path[i].getLastPlayer()));
+			}
+
+			for (int i = depth - 1; i >= 0; i--) {
+				state.undoMove(this.records[i]);
+			}
+		}
+
+		/**
+		 * @param node
+		 *            A node with at least one move
+		 * @return The index of the first unexpanded child, or else the index of the
+		 *         child with the highest UCT value
+		 */
+		private int selectChild(final SearchNode node) {
+			final double logParentVisits = Math.log(Math.max(1, node.getVisits()));
+
+			int bestIndex = 0;
+			double bestValue = Double.NEGATIVE_INFINITY;
+
+			for (int i = 0; i < node.getNumMoves(); i++) {
+				final SearchNode child = node.getChild(i);
+				if (child == null) {
+					return i;
+				}
+
+				// the counters are read separately, so make sure that a visit is never
+				// seen without its node
+				final int visits = Math.max(1, child.getVisits());
+				final double value = (double) child.getTotalReward() / (SearchNode.REWARD_UNITS * visits)
+						+ TreeParallelSearch.this.exploration * Math.sqrt(logParentVisits / visits);
+
+				if (value > bestValue) {
+					bestValue = value;
+					bestIndex = i;
+				}
+			}
+
+			return bestIndex;
+		}
+	}
+}
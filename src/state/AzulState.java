@@ -1,26 +1,36 @@
 package state;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Scanner;
-import java.util.regex.Pattern;
+import java.util.NoSuchElementException;
 
 import api.GameState;
 
 /**
- * This class defines a single game state for Azul. Implementing the GameState
- * interface allows this class to use my MCTS implementation. Azul is unique in
- * that we cannot perform node expansion once we reach the end of a single
- * round, since the branching factor to the start of the next round is too large
- * due to the number of possible tile combinations that may emerge from the bag.
- * As a result, this implemention will treat the ends of rounds as leaf nodes in
- * the MCTS tree and randomly play out one such tile combination for each
- * successive round during the simulation phase. Also,
+ * This class defines a single game state for Azul. The searches in the search
+ * package play the game through this class directly, with in-place moves that
+ * can be undone, and it still implements the GameState interface so that it can
+ * be used with my general MCTS implementation as well. Azul is unique in that
+ * we cannot perform node expansion once we reach the end of a single round,
+ * since the branching factor to the start of the next round is too large due to
+ * the number of possible tile combinations that may emerge from the bag. As a
+ * result, the ends of rounds are treated as leaf nodes in the search tree, and
+ * one such tile combination is played out randomly for each successive round
+ * during the simulation phase. Also,
  * {@link AzulState#getWinningPlayers()} may only return a non-empty list if we
  * are in the final round of the game.
  * 
+ * Whether or not the game is over, along with its winners, is only worked out
+ * when a round is scored and is cached until then, since the search asks for
+ * the winners of every state it visits.
+ * 
+ * Each part of the state keeps its own Zobrist hash up to date as moves are
+ * made and undone, so {@link AzulState#getZobristKey()} only has to combine
+ * them. This lets positions that are reached by different move orders be
+ * recognized as the same position.
+ * 
  * @author Aaron Tetens
  */
 public class AzulState implements GameState {
@@ -33,15 +43,27 @@ public class AzulState implements GameState {
 	private int currentPlayer;
 	private int nextRoundFirstPlayer;
 
+	// the number of tiles on the displays and the table, so that the round is over
+	// exactly when this is zero
+	private int numTilesInPlay;
+
+	// only updated when a round is scored (and when such a move is undone)
+	private boolean isGameOver;
+	private int winningPlayersMask;
+	private List<Integer> winningPlayers;
+
+	// shared with every copy of this state, so that a whole search can draw from
+	// one source
+	private RandomSource random;
+
 	/**
 	 * @param numPlayers
 	 *            The number of players to create the game for
-	 * @param in
-	 *            The Scanner used to read in the user input to refill the game
-	 *            displays
+	 * @param refillSource
+	 *            Fills the displays for the first round
 	 * @throws IllegalArgumentException
 	 */
-	public AzulState(final int numPlayers, final Scanner in) throws IllegalArgumentException {
+	public AzulState(final int numPlayers, final RefillSource refillSource) throws IllegalArgumentException {
 		if (numPlayers < 2 || numPlayers > 4) {
 			throw new IllegalArgumentException("Tried to start a game with " + numPlayers + " players (2-4 required)");
 		}
@@ -51,22 +73,37 @@ public class AzulState implements GameState {
 		this.tileLocations = new TileLocation[2 * numPlayers + 2]; // 2n + 1 displays, plus one for the table
 		this.tileLocations[0] = new Table();
 		for (int i = 1; i < this.tileLocations.length; i++) {
-			this.tileLocations[i] = new Display();
+			this.tileLocations[i] = new Display(i);
 		}
 
 		this.playerBoards = new PlayerBoard[numPlayers];
 		for (int i = 0; i < this.playerBoards.length; i++) {
-			this.playerBoards[i] = new PlayerBoard();
+			this.playerBoards[i] = new PlayerBoard(i);
 		}
 
 		this.lastPlayer = -1;
 		this.currentPlayer = 0;
 		this.nextRoundFirstPlayer = -1;
+		this.numTilesInPlay = 0;
 
-		this.refillDisplaysFromInput(in);
+		this.isGameOver = false;
+		this.winningPlayersMask = 0;
+		this.winningPlayers = Collections.emptyList();
+
+		this.random = ThreadLocalRandomSource.INSTANCE;
+
+		refillSource.refill(this);
 	}
 
-	private AzulState(final AzulState state) {
+	/**
+	 * Creates a deep copy of the given state, which can then be changed in place
+	 * (with {@link AzulState#applyMove(int)} and the like) without affecting the
+	 * original.
+	 * 
+	 * @param state
+	 *            The state to copy
+	 */
+	public AzulState(final AzulState state) {
 		this.tileBag = new TileBag(state.tileBag);
 
 		this.tileLocations = new TileLocation[state.tileLocations.length];
@@ -86,6 +123,14 @@ public class AzulState implements GameState {
 		this.lastPlayer = state.lastPlayer;
 		this.currentPlayer = state.currentPlayer;
 		this.nextRoundFirstPlayer = state.nextRoundFirstPlayer;
+		this.numTilesInPlay = state.numTilesInPlay;
+
+		// the winners list is never modified, so it can be shared
+		this.isGameOver = state.isGameOver;
+		this.winningPlayersMask = state.winningPlayersMask;
+		this.winningPlayers = state.winningPlayers;
+
+		this.random = state.random;
 	}
 
 	/**
@@ -95,6 +140,12 @@ public class AzulState implements GameState {
 	 * box, and moving the first player tile back to the table (and setting the new
 	 * current player based on who had the first player tile).
 	 * 
+	 * Every part of the move is checked first, so this is the method to use for
+	 * moves that come from user input. Moves from
+	 * {@link AzulState#generateMoves(int[])} are already legal and should be
+	 * applied with {@link AzulState#applyMove(int)} instead, which skips the
+	 * checks.
+	 * 
 	 * @param tileLocation
 	 *            Number of the tile location from where the player is taking tiles
 	 *            (use 0 if taking from the table)
@@ -104,23 +155,15 @@ public class AzulState implements GameState {
 	 * @param rowChoice
 	 *            The index of the pattern line that the player will add the
 	 *            selected tiles to (use -1 to add directly to the floor line)
-	 * @param performRefill
-	 *            Whether or not a potentially necessary display refill will be
-	 *            performed (set to false when simulating)
-	 * @param randomRefill
-	 *            Whether or not any performed refills will be done randomly (as
-	 *            opposed to through user input) - this value does not matter if
-	 *            performRefill is false
-	 * @param in
-	 *            The Scanner used to read in the user input to refill the game
-	 *            displays - only necessary to define if performRefill is true and
-	 *            randomRefill is false
+	 * @param refillSource
+	 *            Fills the displays if the move ends the round and the game is not
+	 *            over (or null to leave them empty, as when simulating)
 	 * @throws IllegalArgumentException
 	 *             If the chosen tile location has no tiles to take, if tileLocation
 	 *             does not have the chosen tile, or if the chosen row is not legal
 	 */
-	public void makeMove(final int tileLocation, final String tileChoice, final int rowChoice,
-			final boolean performRefill, final boolean randomRefill, final Scanner in) throws IllegalArgumentException {
+	public void makeMove(final int tileLocation, final TileColor tileChoice, final int rowChoice,
+			final RefillSource refillSource) throws IllegalArgumentException {
 
 		// check that the tile location is a valid number
 		if (tileLocation < 0 || tileLocation > this.tileLocations.length - 1) {
@@ -134,16 +177,12 @@ public class AzulState implements GameState {
 					"Tried to take a tile from an empty tile location (" + tileLocation + ")");
 		}
 
-		// check that tileChoice is formatted correctly
-		if (!Pattern.matches("[BYRKW]", tileChoice)) {
-			throw new IllegalArgumentException(
-					"Tried to take an invalid tile (" + tileChoice + ", one of {B, Y, R, K, W} required)");
-		}
+		final int color = tileChoice.getCode();
 
 		// check that the tile location has the chosen tile
-		if (!this.tileLocations[tileLocation].hasTile(tileChoice)) {
-			throw new IllegalArgumentException("Tried to take " + tileChoice + " from tile location " + tileLocation
-					+ ", but there is no such tile there");
+		if (!this.tileLocations[tileLocation].hasTile(color)) {
+			throw new IllegalArgumentException("Tried to take " + tileChoice.getSymbol() + " from tile location "
+					+ tileLocation + ", but there is no such tile there");
 		}
 
 		// check that the row choice is a valid number
@@ -153,39 +192,201 @@ public class AzulState implements GameState {
 		}
 
 		// check that the chosen color is allowed to be placed in the chosen row
-		if (rowChoice != -1 && !this.playerBoards[currentPlayer].isLegalPlacement(tileChoice, rowChoice)) {
-			throw new IllegalArgumentException(
-					"Tried to add the color " + tileChoice + " to row " + rowChoice + ", but it is not legal to do so");
+		if (rowChoice != -1 && !this.playerBoards[currentPlayer].isLegalPlacement(color, rowChoice)) {
+			throw new IllegalArgumentException("Tried to add the color " + tileChoice.getSymbol() + " to row "
+					+ rowChoice + ", but it is not legal to do so");
 		}
 
 		// if we haven't thrown an exception yet, then the turn is valid
+		this.doMove(tileLocation, color, rowChoice, null);
+
+		// if the move ended the round and the game is not over, set up the next round
+		if (refillSource != null && this.isRoundOver() && !this.isGameOver) {
+			refillSource.refill(this);
+		}
+	}
+
+	/**
+	 * This method applies the given move to the current state in place, filling in
+	 * the given record so that the move can be reversed with
+	 * {@link AzulState#undoMove(MoveRecord)}. The move is assumed to be legal. If
+	 * the move takes the last tiles for the round, the round is scored just as in
+	 * {@link AzulState#makeMove(int, TileColor, int, RefillSource)}, but
+	 * the displays are never refilled.
+	 * 
+	 * @param tileLocation
+	 *            Number of the tile location from where the player is taking tiles
+	 *            (use 0 if taking from the table)
+	 * @param tileChoice
+	 *            The color of tiles that the player has decided to take from the
+	 *            given location
+	 * @param rowChoice
+	 *            The index of the pattern line that the player will add the
+	 *            selected tiles to (use -1 to add directly to the floor line)
+	 * @param record
+	 *            The record to fill in (its previous contents are overwritten)
+	 */
+	public void applyMove(final int tileLocation, final TileColor tileChoice, final int rowChoice,
+			final MoveRecord record) {
+		this.doMove(tileLocation, tileChoice.getCode(), rowChoice, record);
+	}
+
+	/**
+	 * Applies a move produced by {@link AzulState#generateMoves(int[])} in place.
+	 * The move is assumed to be legal, and the displays are never refilled.
+	 * 
+	 * @param move
+	 *            The encoded move (see {@link Move})
+	 */
+	public void applyMove(final int move) {
+		this.doMove(Move.getTileLocation(move), Move.getColor(move), Move.getRowChoice(move), null);
+	}
+
+	/**
+	 * Applies a move produced by {@link AzulState#generateMoves(int[])} in place,
+	 * filling in the given record so that it can be undone.
+	 * 
+	 * @param move
+	 *            The encoded move (see {@link Move})
+	 * @param record
+	 *            The record to fill in (its previous contents are overwritten)
+	 */
+	public void applyMove(final int move, final MoveRecord record) {
+		this.doMove(Move.getTileLocation(move), Move.getColor(move), Move.getRowChoice(move), record);
+	}
+
+	/**
+	 * Reverses a move made by
+	 * {@link AzulState#applyMove(int, TileColor, int, MoveRecord)}. Moves must be
+	 * undone in the reverse order that they were applied.
+	 * 
+	 * @param record
+	 *            The record that was filled in when the move was applied
+	 */
+	public void undoMove(final MoveRecord record) {
+		// if the move ended the round, go back to the boards and bag from before the
+		// scoring
+		if (record.playerBoards != null) {
+			for (int i = 0; i < this.playerBoards.length; i++) {
+				this.playerBoards[i] = record.playerBoards[i];
+			}
+			this.tileBag.copyFrom(record.tileBag);
+
+			// moves cannot be made once the game is over, so it was not over before
+			this.isGameOver = false;
+			this.winningPlayersMask = 0;
+			this.winningPlayers = Collections.emptyList();
+
+			record.playerBoards = null;
+			record.tileBag = null;
+		}
+
+		final PlayerBoard playerBoard = this.playerBoards[record.currentPlayer];
+
+		// give back the first player tile
+		if (record.placedFirstPlayerTile) {
+			playerBoard.removeFirstPlayerTile();
+		}
+		if (record.hadFirstPlayerTile) {
+			((Table) this.tileLocations[0]).addFirstPlayerTile();
+		} else {
+			((Table) this.tileLocations[0]).removeFirstPlayerTile();
+		}
+
+		// move the tiles that were spilled onto the table back to their display
+		if (record.tileLocation != 0) {
+			this.tileLocations[0].removeTiles(record.spilledTiles);
+			this.tileLocations[record.tileLocation].addTiles(record.spilledTiles);
+		}
+
+		// take the tiles back out of the lid and off of the player board
+		if (record.numExcess > 0) {
+			this.tileBag.removeTilesFromLid(record.numExcess, record.color);
+		}
+		playerBoard.removeTiles(record.numPlacedInRow, record.numPlacedInFloorLine, record.rowChoice);
+
+		// put the tiles back where they were taken from
+		this.tileLocations[record.tileLocation].addTiles(record.numRemoved, record.color);
+		this.numTilesInPlay += record.numRemoved;
+
+		this.lastPlayer = record.lastPlayer;
+		this.currentPlayer = record.currentPlayer;
+		this.nextRoundFirstPlayer = record.nextRoundFirstPlayer;
+	}
+
+	/**
+	 * Applies the given move, which is assumed to be legal. If the move takes the
+	 * last tiles for the round, this method will update the game state as much as
+	 * possible via scoring, moving the necessary tiles to the lid of the game box,
+	 * and moving the first player tile back to the table (and setting the new
+	 * current player based on who had the first player tile). The displays are not
+	 * refilled here.
+	 * 
+	 * @param color
+	 *            The color of tiles being taken (0-4)
+	 * @param record
+	 *            If non-null, this record is filled in with everything needed to
+	 *            undo the move
+	 */
+	private void doMove(final int tileLocation, final int color, final int rowChoice, final MoveRecord record) {
+		final PlayerBoard playerBoard = this.playerBoards[this.currentPlayer];
+		final Table table = (Table) this.tileLocations[0];
+
+		if (record != null) {
+			record.tileLocation = tileLocation;
+			record.color = color;
+			record.rowChoice = rowChoice;
+			record.hadFirstPlayerTile = table.hasFirstPlayerTile();
+			record.placedFirstPlayerTile = false;
+			record.lastPlayer = this.lastPlayer;
+			record.currentPlayer = this.currentPlayer;
+			record.nextRoundFirstPlayer = this.nextRoundFirstPlayer;
+			record.playerBoards = null;
+			record.tileBag = null;
+		}
 
 		// remove all of the chosen color from the chosen location
-		final int numRemoved = this.tileLocations[tileLocation].removeAll(tileChoice);
+		final int numRemoved = this.tileLocations[tileLocation].removeAll(color);
+		this.numTilesInPlay -= numRemoved;
+		final int numPlacedInRow = (record != null && rowChoice != -1)
+				? Math.min(numRemoved, playerBoard.getNumEmptySpaces(rowChoice))
+				: 0;
 
 		// add the tiles to the given row and save the amount of tiles that need to be
 		// sent to the box due to floor line overflow
-		final int numExcess = this.playerBoards[currentPlayer].addTiles(numRemoved, tileChoice, rowChoice);
+		final int numExcess = playerBoard.addTiles(numRemoved, color, rowChoice);
 
 		// add excess tiles to the lid of the box
 		if (numExcess > 0) {
-			this.tileBag.addTilesToLid(numExcess, tileChoice);
+			this.tileBag.addTilesToLid(numExcess, color);
+		}
+
+		if (record != null) {
+			record.numRemoved = numRemoved;
+			record.numPlacedInRow = numPlacedInRow;
+			record.numPlacedInFloorLine = numRemoved - numPlacedInRow - numExcess;
+			record.numExcess = numExcess;
 		}
 
 		// if we took from the table, add the first player tile to the floor line if no
 		// one has taken it yet
 		if (tileLocation == 0) {
-			final Table table = (Table) this.tileLocations[0];
-
 			if (table.hasFirstPlayerTile()) {
 				table.removeFirstPlayerTile();
-				this.playerBoards[this.currentPlayer].addFirstPlayerTile();
+				final boolean placedFirstPlayerTile = playerBoard.addFirstPlayerTile();
 				this.nextRoundFirstPlayer = this.currentPlayer;
+
+				if (record != null) {
+					record.placedFirstPlayerTile = placedFirstPlayerTile;
+				}
 			}
 		} else {
 			// if we took from a display, move the remaining tiles onto the table
-			final Map<String, Integer> remainingTiles = this.tileLocations[tileLocation].removeAllTiles();
-			this.tileLocations[0].addTiles(remainingTiles);
+			if (record != null) {
+				this.tileLocations[tileLocation].copyTilesTo(record.spilledTiles);
+			}
+
+			this.tileLocations[tileLocation].moveAllTilesTo(table);
 		}
 
 		// the turn is over, so update the last player
@@ -201,11 +402,21 @@ public class AzulState implements GameState {
 		// if the round is over, proceed to the scoring phase and set up next round if
 		// the game is not over
 
+		// keep the boards and bag from before the scoring so that the move can be
+		// undone
+		if (record != null) {
+			record.playerBoards = new PlayerBoard[this.playerBoards.length];
+			for (int i = 0; i < this.playerBoards.length; i++) {
+				record.playerBoards[i] = new PlayerBoard(this.playerBoards[i]);
+			}
+			record.tileBag = new TileBag(this.tileBag);
+		}
+
 		// scoring
-		for (final PlayerBoard playerBoard : this.playerBoards) {
-			final Map<String, Integer> tilesToLid = playerBoard.doScoring();
-			this.tileBag.addTilesToLid(tilesToLid);
+		for (final PlayerBoard board : this.playerBoards) {
+			board.doScoring(this.tileBag);
 		}
+		this.updateGameOver();
 
 		// next round setup
 		if (this.nextRoundFirstPlayer != -1) {
@@ -215,138 +426,190 @@ public class AzulState implements GameState {
 					: 0;
 		}
 
-		if (this.getWinningPlayers().isEmpty()) {
-			if (performRefill) {
-				if (randomRefill) {
-					this.refillDisplaysRandomly();
-				} else {
-					this.refillDisplaysFromInput(in);
-				}
-			}
-
-			((Table) this.tileLocations[0]).addFirstPlayerTile();
+		if (!this.isGameOver) {
+			table.addFirstPlayerTile();
 			this.nextRoundFirstPlayer = -1;
 		}
 	}
 
 	/**
 	 * Refills the displays randomly. This method assumes that all displays are
-	 * empty and that the table has no tiles on it.
+	 * empty and that the table has no tiles on it (that is, the round is over).
 	 */
-	private void refillDisplaysRandomly() {
-		for (int i = 1; i < this.tileLocations.length; i++) {
-			for (int count = 0; count < 4; count++) {
-				final String tile = this.tileBag.drawRandomTile();
+	public void refillDisplaysRandomly() {
+		this.refillDisplaysRandomly(this.random);
+	}
 
-				// if the lid and bag are out of tiles, just stop drawing
-				if (tile == null) {
-					return;
-				}
+	/**
+	 * Refills the displays randomly, drawing from the given source instead of the
+	 * one used by this state. This method assumes that all displays are empty and
+	 * that the table has no tiles on it (that is, the round is over).
+	 * 
+	 * @param random
+	 *            The source of randomness for the draws
+	 */
+	public void refillDisplaysRandomly(final RandomSource random) {
+		this.numTilesInPlay += this.tileBag.fillDisplaysRandomly(this.tileLocations, random);
+	}
 
-				final Map<String, Integer> tilesToAdd = new HashMap<>();
-				tilesToAdd.put(tile, 1);
-				this.tileLocations[i].addTiles(tilesToAdd);
-			}
+	/**
+	 * Sets the source of random numbers used for random refills and random moves
+	 * by this state and every state copied from it from now on. Until this is
+	 * called, {@link ThreadLocalRandomSource#INSTANCE} is used. Most sources are
+	 * not thread-safe, so a state (and its copies) given its own source should
+	 * only be used by one thread.
+	 * 
+	 * @param random
+	 *            The source to use
+	 * @throws IllegalArgumentException
+	 *             If the source is null
+	 */
+	public void setRandom(final RandomSource random) throws IllegalArgumentException {
+		if (random == null) {
+			throw new IllegalArgumentException("Tried to set a null random source");
 		}
+
+		this.random = random;
 	}
 
 	/**
-	 * This method takes in user input to draw tiles from the bag and put them in
-	 * the displays
-	 * 
-	 * @param in
-	 *            The Scanner used to read in the user input
+	 * @return The source of random numbers used by this state
 	 */
-	public void refillDisplaysFromInput(final Scanner in) {
-		System.out.println("Refilling displays from input...");
+	public RandomSource getRandom() {
+		return this.random;
+	}
 
-		// check that all tile locations are empty before taking in user input
+	/**
+	 * Gets ready to refill the displays by hand (as opposed to randomly). If the
+	 * bag does not have enough tiles to fill every display, the lid tiles are put
+	 * back in the bag ahead of time, since the tiles are chosen by the caller
+	 * rather than drawn in order.
+	 * 
+	 * @return Whether or not the bag now has enough tiles to fill every display
+	 *         (if not, the displays are filled one tile at a time until the bag is
+	 *         empty)
+	 * @throws IllegalStateException
+	 *             If there are still tiles in play
+	 */
+	boolean prepareManualRefill() throws IllegalStateException {
+		// check that all tile locations are empty before refilling
 		for (final TileLocation tileLocation : this.tileLocations) {
 			if (!tileLocation.isEmpty()) {
 				throw new IllegalStateException("Tried to refill displays while tiles are still in play");
 			}
 		}
 
-		// add the lid tiles back into the bag if there are not enough tiles in the bag
-		// to fill all of the displays - we can only do this ahead of time because we
-		// are receiving user input to determine which tiles are drawn instead of
-		// drawing them ourselves randomly
-		if (this.tileBag.getNumTilesRemaining() < 4 * (this.tileLocations.length - 1)) {
+		final int numNeeded = 4 * (this.tileLocations.length - 1);
+		if (this.tileBag.getNumTilesRemaining() < numNeeded) {
 			this.tileBag.addLidTilesToBag();
+		}
 
-			// if there are still not enough tiles to fill the displays, then we will have
-			// to deal with incomplete displays
-			if (this.tileBag.getNumTilesRemaining() < 4 * (this.tileLocations.length - 1)) {
-				System.out.println(
-						"There are not enough tiles to fill all of the displays, so we will draw them one at a time until the bag is empty.");
-
-				for (int i = 1; i < this.tileLocations.length; i++) {
-					if (this.tileBag.isBagEmpty()) {
-						break;
-					}
-
-					for (int count = 1; count <= 4; count++) {
-						if (this.tileBag.isBagEmpty()) {
-							break;
-						}
-
-						String newTile = null;
-						boolean tryAgain = true;
-
-						while (tryAgain) {
-							tryAgain = false;
-							System.out.print("Tile " + count + " for display " + i + ": ");
-							newTile = in.nextLine().toUpperCase();
-							try {
-								this.tileBag.removeSingleTile(newTile);
-								
-								final Map<String, Integer> tilesToAdd = new HashMap<>();
-								tilesToAdd.put(newTile, 1);
-								this.tileLocations[i].addTiles(tilesToAdd);
-							} catch (final IllegalArgumentException e) {
-								System.out.println(e.getMessage());
-								tryAgain = true;
-							}
-						}
-					}
-				}
+		return this.tileBag.getNumTilesRemaining() >= numNeeded;
+	}
+
+	/**
+	 * @return Whether or not the bag is out of tiles
+	 */
+	boolean isBagEmpty() {
+		return this.tileBag.isBagEmpty();
+	}
+
+	/**
+	 * @return The number of displays (not counting the table)
+	 */
+	int getNumDisplays() {
+		return this.tileLocations.length - 1;
+	}
+
+	/**
+	 * Moves the given tiles from the bag to the given empty display.
+	 * 
+	 * @param display
+	 *            Is assumed to be 1 to the number of displays
+	 * @param counts
+	 *            The number of tiles of each color
+	 * @throws IllegalArgumentException
+	 *             If the bag does not have the given tiles
+	 * @throws IllegalStateException
+	 *             If the display is not empty
+	 */
+	void addDisplayTiles(final int display, final int[] counts)
+			throws IllegalArgumentException, IllegalStateException {
+		if (!this.tileLocations[display].isEmpty()) {
+			throw new IllegalStateException("Attempted to add tiles to a non-empty tile location");
+		}
+
+		this.tileBag.removeTiles(counts);
+		this.tileLocations[display].addTiles(counts);
+		for (final int count : counts) {
+			this.numTilesInPlay += count;
+		}
+	}
+
+	/**
+	 * Moves a single tile of the given color from the bag to the given display.
+	 * 
+	 * @param display
+	 *            Is assumed to be 1 to the number of displays
+	 * @param color
+	 *            The color of the tile
+	 * @throws IllegalArgumentException
+	 *             If the bag does not have a tile of the given color
+	 */
+	void addDisplayTile(final int display, final TileColor color) throws IllegalArgumentException {
+		this.tileBag.removeSingleTile(color.getCode());
+		this.tileLocations[display].addTiles(1, color.getCode());
+		this.numTilesInPlay++;
+	}
+
+	/**
+	 * Creates a {@link PackedAzulState} for the same position as this state, which
+	 * is much cheaper to copy during the search. Tiles that are in a floor line are
+	 * counted as being in the lid already, since that is where they will go at the
+	 * end of the round.
+	 * 
+	 * @return The packed version of this state
+	 */
+	public PackedAzulState toPackedState() {
+		int bag = 0;
+		int lid = 0;
+		for (int color = 0; color < TileColor.NUM_COLORS; color++) {
+			bag = PackedAzulState.addCount(bag, color, this.tileBag.getNumInBag(color));
+			lid = PackedAzulState.addCount(lid, color, this.tileBag.getNumInLid(color));
+			for (final PlayerBoard playerBoard : this.playerBoards) {
+				lid = PackedAzulState.addCount(lid, color, playerBoard.getNumFloorLineTiles(color));
 			}
 		}
 
-		// read in user input and add to the displays from the bag
-		for (int i = 1; i < this.tileLocations.length; i++) {
-			String newTiles = null;
-			boolean tryAgain = true;
-
-			while (tryAgain) {
-				tryAgain = false;
-				System.out.print("Display " + i + ": ");
-				newTiles = in.nextLine().toUpperCase();
-				try {
-					this.tileBag.removeTilesFromInput(newTiles);
-					this.tileLocations[i].addTilesFromInput(newTiles);
-				} catch (final IllegalArgumentException | IllegalStateException e) {
-					System.out.println(e.getMessage());
-					tryAgain = true;
-				}
+		final int[] tileLocations = new int[this.tileLocations.length];
+		for (int i = 0; i < tileLocations.length; i++) {
+			for (int color = 0; color < TileColor.NUM_COLORS; color++) {
+				tileLocations[i] = PackedAzulState.addCount(tileLocations[i], color,
+						this.tileLocations[i].getNumTiles(color));
 			}
+		}
+		tileLocations[0] |= PackedAzulState.packTableFlag(((Table) this.tileLocations[0]).hasFirstPlayerTile());
 
+		final int[] walls = new int[this.playerBoards.length];
+		final int[] patternLines = new int[this.playerBoards.length];
+		final int[] floorLines = new int[this.playerBoards.length];
+		final int[] scores = new int[this.playerBoards.length];
+		for (int i = 0; i < this.playerBoards.length; i++) {
+			walls[i] = this.playerBoards[i].packWall();
+			patternLines[i] = this.playerBoards[i].packPatternLines();
+			floorLines[i] = this.playerBoards[i].packFloorLine();
+			scores[i] = this.playerBoards[i].getScore();
 		}
+
+		return new PackedAzulState(bag, lid, tileLocations, walls, patternLines, floorLines, scores,
+				this.lastPlayer, this.currentPlayer, this.nextRoundFirstPlayer, this.random);
 	}
 
 	/**
 	 * @return Whether or not the current round is over
 	 */
 	public boolean isRoundOver() {
-		boolean isRoundOver = true;
-		for (final TileLocation location : this.tileLocations) {
-			if (!location.isEmpty()) {
-				isRoundOver = false;
-				break;
-			}
-		}
-
-		return isRoundOver;
+		return this.numTilesInPlay == 0;
 	}
 
 	/**
@@ -365,71 +628,261 @@ public class AzulState implements GameState {
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * Writes every legal move for the current player into the given array without
+	 * creating any states. A (location, color) pair is only sent directly to the
+	 * floor line if no row can take it. No moves are written if the round is over.
+	 * 
+	 * @param moves
+	 *            Is assumed to have room for at least {@link Move#MAX_MOVES} moves
+	 * @return The number of moves written
 	 */
-	@Override
-	public List<GameState> getNextStates() {
-		final List<GameState> nextStates = new ArrayList<>();
+	public int generateMoves(final int[] moves) {
+		return this.generateMoves(moves, false);
+	}
+
+	/**
+	 * Works like {@link AzulState#generateMoves(int[])}, except that when several
+	 * displays hold exactly the same tiles, moves are only written for the first
+	 * of them. Taking from any of those displays leads to positions that differ
+	 * only in which display was emptied, so they are all worth the same.
+	 * 
+	 * @param moves
+	 *            Is assumed to have room for at least {@link Move#MAX_MOVES} moves
+	 * @return The number of moves written
+	 */
+	public int generateDistinctMoves(final int[] moves) {
+		return this.generateMoves(moves, true);
+	}
 
-		// if the round is over, then this state is not expandable
-		if (this.isRoundOver()) {
-			return nextStates;
+	/**
+	 * Works like {@link AzulState#generateDistinctMoves(int[])}, but can also merge
+	 * moves that lead to the same position (for example, when every legal row for
+	 * a color is already full, so the tiles all go to the floor line no matter
+	 * which row is picked). Only the first move leading to each position is kept.
+	 * Positions are compared by {@link AzulState#getCanonicalZobristKey()}, which
+	 * means that every move has to be applied and undone once, so merging is
+	 * optional. These are the moves that
+	 * {@link AzulState#getNextStates(boolean)} expands when merging is asked for.
+	 * 
+	 * When merging, every move is applied to this state and undone again, so this
+	 * state is changed while the method runs. It must not be called while another
+	 * thread is reading this state (use a copy instead).
+	 * 
+	 * @param moves
+	 *            Is assumed to have room for at least {@link Move#MAX_MOVES} moves
+	 * @param mergeEquivalentMoves
+	 *            Whether or not to merge moves that lead to the same position
+	 * @return The number of moves written
+	 */
+	public int generateDistinctMoves(final int[] moves, final boolean mergeEquivalentMoves) {
+		final int numMoves = this.generateMoves(moves, true);
+
+		if (!mergeEquivalentMoves || numMoves < 2) {
+			return numMoves;
 		}
 
-		// try every combination of tile location, tile choice, and row choice and keep
-		// the ones that are valid
+		final long[] keys = new long[numMoves];
+		final MoveRecord record = new MoveRecord();
+		int numKept = 0;
+
+		for (int i = 0; i < numMoves; i++) {
+			this.applyMove(moves[i], record);
+			final long key = this.getCanonicalZobristKey();
+			this.undoMove(record);
+
+			// keep the move only if no earlier move led to the same position
+			boolean isDuplicate = false;
+			for (int j = 0; j < numKept && !isDuplicate; j++) {
+				isDuplicate = keys[j] == key;
+			}
+
+			if (!isDuplicate) {
+				keys[numKept] = key;
+				moves[numKept++] = moves[i];
+			}
+		}
+
+		return numKept;
+	}
+
+	/**
+	 * @param moves
+	 *            Is assumed to have room for at least {@link Move#MAX_MOVES} moves
+	 * @param skipDuplicateDisplays
+	 *            Whether or not to skip displays with the same tiles as an earlier
+	 *            display
+	 * @return The number of moves written
+	 */
+	private int generateMoves(final int[] moves, final boolean skipDuplicateDisplays) {
+		// legality only depends on the board, so it is worked out once up front
+		final int legalPlacementMask = this.playerBoards[this.currentPlayer].getLegalPlacementMask();
+		int numMoves = 0;
 
 		for (int tileLocation = 0; tileLocation < this.tileLocations.length; tileLocation++) {
-			// skip empty tiles locations
-			if (this.tileLocations[tileLocation].isEmpty()) {
+			if (skipDuplicateDisplays && this.isDuplicateDisplay(tileLocation)) {
 				continue;
 			}
 
 			// only use tile choices that are actually in the current tile location
-			final String tileChoices = this.tileLocations[tileLocation].getTileChoices();
-
-			for (int tileChoiceIndex = 0; tileChoiceIndex < tileChoices.length(); tileChoiceIndex++) {
-				final String tileChoice = tileChoices.substring(tileChoiceIndex, tileChoiceIndex + 1);
+			for (int mask = this.tileLocations[tileLocation].getColorMask(); mask != 0; mask &= mask - 1) {
+				final int color = Integer.numberOfTrailingZeros(mask);
+				final int legalRows = legalPlacementMask >>> 5 * color & 31;
 
 				// prefer moves that do not put tiles into the floor line only
-				boolean madeLegalMove = false;
+				if (legalRows == 0) {
+					moves[numMoves++] = Move.encode(tileLocation, color, -1);
+					continue;
+				}
 
-				for (int rowChoice = 0; rowChoice < 5; rowChoice++) {
-					// skip illegal color placements
-					if (rowChoice != -1
-							&& !this.playerBoards[this.currentPlayer].isLegalPlacement(tileChoice, rowChoice)) {
-						continue;
-					}
+				for (int rows = legalRows; rows != 0; rows &= rows - 1) {
+					moves[numMoves++] = Move.encode(tileLocation, color, Integer.numberOfTrailingZeros(rows));
+				}
+			}
+		}
 
-					final AzulState nextState = new AzulState(this);
+		return numMoves;
+	}
 
-					try {
-						nextState.makeMove(tileLocation, tileChoice, rowChoice, false, false, null);
-					} catch (final IllegalArgumentException e) {
-						continue;
-					}
+	/**
+	 * @param tileLocation
+	 *            The index of a tile location
+	 * @return Whether or not the given tile location is a non-empty display with
+	 *         exactly the same tiles as an earlier display
+	 */
+	private boolean isDuplicateDisplay(final int tileLocation) {
+		final TileLocation location = this.tileLocations[tileLocation];
+		if (tileLocation < 2 || location.isEmpty()) {
+			return false;
+		}
 
-					nextStates.add(nextState);
-					madeLegalMove = true;
-				}
+		for (int i = 1; i < tileLocation; i++) {
+			// the color masks are a cheap first check
+			if (this.tileLocations[i].getColorMask() == location.getColorMask()
+					&& this.tileLocations[i].hasSameTiles(location)) {
+				return true;
+			}
+		}
 
-				if (!madeLegalMove) {
-					final AzulState nextState = new AzulState(this);
+		return false;
+	}
 
-					try {
-						nextState.makeMove(tileLocation, tileChoice, -1, false, false, null);
-					} catch (final IllegalArgumentException e) {
-						continue;
-					}
+	/**
+	 * {@inheritDoc} Only one of several displays with the same tiles is expanded,
+	 * but moves that lead to the same position are not merged (see
+	 * {@link AzulState#getNextStates(boolean)}).
+	 */
+	@Override
+	public List<GameState> getNextStates() {
+		return this.getNextStates(false);
+	}
+
+	/**
+	 * @param mergeEquivalentMoves
+	 *            Whether or not to merge moves that lead to the same position, as
+	 *            in {@link AzulState#generateDistinctMoves(int[], boolean)} (the
+	 *            children are compared, so this state is never changed)
+	 * @return The children of this state (empty if the round is over)
+	 */
+	public List<GameState> getNextStates(final boolean mergeEquivalentMoves) {
+		// if the round is over, then this state is not expandable (and no moves are
+		// generated)
+		final int[] moves = new int[Move.MAX_MOVES];
+		final int numMoves = this.generateDistinctMoves(moves);
+
+		final List<GameState> nextStates = new ArrayList<>(numMoves);
 
-					nextStates.add(nextState);
+		// every child is built anyway, so equivalent moves are merged by comparing
+		// the children (which also leaves this state untouched)
+		final long[] keys = mergeEquivalentMoves ? new long[numMoves] : null;
+
+		// the generated moves are legal, so they can skip the checks in makeMove
+		for (int i = 0; i < numMoves; i++) {
+			final AzulState nextState = this.getNextState(moves[i]);
+
+			if (mergeEquivalentMoves) {
+				final long key = nextState.getCanonicalZobristKey();
+
+				// keep the child only if no earlier child is the same position
+				boolean isDuplicate = false;
+				for (int j = 0; j < nextStates.size() && !isDuplicate; j++) {
+					isDuplicate = keys[j] == key;
+				}
+
+				if (isDuplicate) {
+					continue;
 				}
+				keys[nextStates.size()] = key;
 			}
+
+			nextStates.add(nextState);
 		}
 
 		return nextStates;
 	}
 
+	/**
+	 * Builds the single child of this state reached by the given move, leaving
+	 * this state unchanged. Together with {@link AzulState#generateMoves(int[])},
+	 * this lets a search create children one at a time as it expands them.
+	 * 
+	 * @param move
+	 *            An encoded move produced by {@link AzulState#generateMoves(int[])}
+	 *            for this state (see {@link Move})
+	 * @return A new state with the move applied
+	 */
+	public AzulState getNextState(final int move) {
+		final AzulState nextState = new AzulState(this);
+		nextState.applyMove(move);
+		return nextState;
+	}
+
+	/**
+	 * Iterates over the same children as {@link AzulState#getNextStates()}, in the
+	 * same order, but only builds each child when it is asked for. The legal moves
+	 * are generated when this method is called, so this state should not be
+	 * changed while the iterator is in use.
+	 * 
+	 * @return An iterator over the children of this state
+	 */
+	public Iterator<AzulState> nextStateIterator() {
+		return this.nextStateIterator(false);
+	}
+
+	/**
+	 * Works like {@link AzulState#nextStateIterator()}, but iterates over the same
+	 * children as {@link AzulState#getNextStates(boolean)}.
+	 * 
+	 * @param mergeEquivalentMoves
+	 *            Whether or not to merge moves that lead to the same position
+	 * @return An iterator over the children of this state
+	 */
+	public Iterator<AzulState> nextStateIterator(final boolean mergeEquivalentMoves) {
+		// merging applies and undoes every move, so it is done on a copy to leave
+		// this state untouched
+		final int[] moves = new int[Move.MAX_MOVES];
+		final int numMoves = mergeEquivalentMoves ? new AzulState(this).generateDistinctMoves(moves, true)
+				: this.generateDistinctMoves(moves);
+
+		return new Iterator<AzulState>() {
+
+			private int nextIndex = 0;
+
+			@Override
+			public boolean hasNext() {
+				return this.nextIndex < numMoves;
+			}
+
+			@Override
+			public AzulState next() {
+				if (this.nextIndex == numMoves) {
+					throw new NoSuchElementException();
+				}
+
+				return AzulState.this.getNextState(moves[this.nextIndex++]);
+			}
+		};
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -441,18 +894,21 @@ public class AzulState implements GameState {
 			copy.refillDisplaysRandomly();
 		}
 
-		final List<GameState> nextStates = copy.getNextStates();
-		final int randomIndex = (int) (Math.random() * nextStates.size());
-		return nextStates.get(randomIndex);
+		// pick uniformly from every legal move (including those from duplicate
+		// displays, so that playouts are not biased against them), but only apply
+		// the chosen one
+		final int[] moves = new int[Move.MAX_MOVES];
+		final int numMoves = copy.generateMoves(moves);
+		copy.applyMove(moves[this.random.nextInt(numMoves)]);
+
+		return copy;
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * Works out whether or not the game is over and, if it is, who won. This must
+	 * be called every time a round is scored.
 	 */
-	@Override
-	public List<Integer> getWinningPlayers() {
-		final List<Integer> winningPlayers = new ArrayList<>();
-
+	private void updateGameOver() {
 		// check if game is over
 		boolean isGameOver = false;
 		for (final PlayerBoard playerBoard : this.playerBoards) {
@@ -464,11 +920,12 @@ public class AzulState implements GameState {
 
 		// if game is not over, there are no winners to report
 		if (!isGameOver) {
-			return winningPlayers;
+			return;
 		}
 
 		// if game is over, winner is decided by final score, then by most completed
 		// rows
+		int winningPlayersMask = 0;
 		int finalScoreOfBest = -1;
 		int numCompletedWallRowsOfBest = -1;
 
@@ -477,24 +934,146 @@ public class AzulState implements GameState {
 			final int numCompletedWallRows = this.playerBoards[i].getNumCompletedWallRows();
 
 			if (finalScore > finalScoreOfBest) {
-				winningPlayers.clear();
-				winningPlayers.add(i);
+				winningPlayersMask = 1 << i;
 
 				finalScoreOfBest = finalScore;
 				numCompletedWallRowsOfBest = numCompletedWallRows;
 			} else if (finalScore == finalScoreOfBest) {
 				if (numCompletedWallRows > numCompletedWallRowsOfBest) {
-					winningPlayers.clear();
-					winningPlayers.add(i);
+					winningPlayersMask = 1 << i;
 
 					numCompletedWallRowsOfBest = numCompletedWallRows;
 				} else if (numCompletedWallRows == numCompletedWallRowsOfBest) {
-					winningPlayers.add(i);
+					winningPlayersMask |= 1 << i;
 				}
 			}
 		}
 
-		return winningPlayers;
+		final List<Integer> winningPlayers = new ArrayList<>();
+		for (int mask = winningPlayersMask; mask != 0; mask &= mask - 1) {
+			winningPlayers.add(Integer.numberOfTrailingZeros(mask));
+		}
+
+		this.isGameOver = true;
+		this.winningPlayersMask = winningPlayersMask;
+		this.winningPlayers = Collections.unmodifiableList(winningPlayers);
+	}
+
+	/**
+	 * @return Whether or not the game is over (the same as checking that
+	 *         {@link AzulState#getWinningPlayers()} is not empty, but cheaper)
+	 */
+	public boolean isGameOver() {
+		return this.isGameOver;
+	}
+
+	/**
+	 * @return A mask with bit i set if and only if player i is one of the winners
+	 *         (0 if the game is not over)
+	 */
+	public int getWinningPlayersMask() {
+		return this.winningPlayersMask;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The returned list is shared between calls and cannot be modified.
+	 */
+	@Override
+	public List<Integer> getWinningPlayers() {
+		return this.winningPlayers;
+	}
+
+	/**
+	 * @return A 64-bit Zobrist hash of this state, which is the same for any two
+	 *         states that are {@link AzulState#equals(Object)}
+	 */
+	public long getZobristKey() {
+		long key = this.tileBag.getZobristKey()
+				^ Zobrist.players(this.currentPlayer, this.lastPlayer, this.nextRoundFirstPlayer);
+		for (final TileLocation tileLocation : this.tileLocations) {
+			key ^= tileLocation.getZobristKey();
+		}
+		for (final PlayerBoard playerBoard : this.playerBoards) {
+			key ^= playerBoard.getZobristKey();
+		}
+		return key;
+	}
+
+	/**
+	 * Works like {@link AzulState#getZobristKey()}, except that the displays are
+	 * hashed by their contents alone, with keys that are added together instead of
+	 * XORed (see {@link Zobrist}), so that positions that only differ in which
+	 * display holds which tiles get the same key. The contents keys are kept up to
+	 * date by the displays themselves, so this does not sort or allocate anything.
+	 * 
+	 * @return A 64-bit Zobrist hash of the canonical form of this state
+	 */
+	public long getCanonicalZobristKey() {
+		long key = this.tileBag.getZobristKey()
+				^ Zobrist.players(this.currentPlayer, this.lastPlayer, this.nextRoundFirstPlayer)
+				^ this.tileLocations[0].getZobristKey();
+		for (final PlayerBoard playerBoard : this.playerBoards) {
+			key ^= playerBoard.getZobristKey();
+		}
+
+		long displaysKey = 0;
+		for (int i = 1; i < this.tileLocations.length; i++) {
+			displaysKey += this.tileLocations[i].getContentsKey();
+		}
+
+		return key ^ displaysKey;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		final long key = this.getZobristKey();
+		return (int) (key ^ key >>> 32);
+	}
+
+	/**
+	 * Two states are equal if they have the same tiles in the bag, lid, tile
+	 * locations, and player boards, the same scores, and the same turn order.
+	 */
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof AzulState)) {
+			return false;
+		}
+
+		final AzulState state = (AzulState) obj;
+
+		// the keys disagree for almost every pair of different states, so check them
+		// before comparing everything
+		if (this.tileLocations.length != state.tileLocations.length
+				|| this.getZobristKey() != state.getZobristKey()) {
+			return false;
+		}
+
+		if (this.currentPlayer != state.currentPlayer || this.lastPlayer != state.lastPlayer
+				|| this.nextRoundFirstPlayer != state.nextRoundFirstPlayer
+				|| !this.tileBag.hasSameTiles(state.tileBag)) {
+			return false;
+		}
+		for (int i = 0; i < this.tileLocations.length; i++) {
+			if (!this.tileLocations[i].hasSameTiles(state.tileLocations[i])) {
+				return false;
+			}
+		}
+		for (int i = 0; i < this.playerBoards.length; i++) {
+			if (!this.playerBoards[i].hasSameTiles(state.playerBoards[i])) {
+				return false;
+			}
+		}
+
+		return true;
 	}
 
 	/**
@@ -0,0 +1,125 @@
+package state;
+
+import java.util.Scanner;
+
+/**
+ * A {@link RefillSource} that asks the user which tiles were drawn, so that the
+ * program can follow a game played with a real bag. Prompts and errors are
+ * printed to standard output, and the user is asked again until every display
+ * has been filled with tiles that are actually in the bag.
+ * 
+ * @author Aaron Tetens
+ */
+public class ConsoleRefillSource implements RefillSource {
+
+	private final Scanner in;
+
+	/**
+	 * @param in
+	 *            The Scanner used to read in the user input
+	 */
+	public ConsoleRefillSource(final Scanner in) {
+		this.in = in;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void refill(final AzulState state) {
+		System.out.println("Refilling displays from input...");
+
+		// if there are not enough tiles to fill the displays even after the lid tiles
+		// are put back in the bag, then we have to deal with incomplete displays
+		if (!state.prepareManualRefill()) {
+			System.out.println(
+					"There are not enough tiles to fill all of the displays, so we will draw them one at a time until the bag is empty.");
+
+			for (int i = 1; i <= state.getNumDisplays(); i++) {
+				for (int count = 1; count <= 4; count++) {
+					if (state.isBagEmpty()) {
+						return;
+					}
+
+					this.readTile(state, i, count);
+				}
+			}
+
+			return;
+		}
+
+		// read in user input and add to the displays from the bag
+		for (int i = 1; i <= state.getNumDisplays(); i++) {
+			boolean tryAgain = true;
+
+			while (tryAgain) {
+				tryAgain = false;
+				System.out.print("Display " + i + ": ");
+				try {
+					state.addDisplayTiles(i, parseDisplayInput(this.in.nextLine()));
+				} catch (final IllegalArgumentException | IllegalStateException e) {
+					System.out.println(e.getMessage());
+					tryAgain = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads in a single tile for the given display, asking again until the input
+	 * is a tile that is in the bag.
+	 * 
+	 * @param state
+	 *            The state being refilled
+	 * @param display
+	 *            The display to add the tile to
+	 * @param count
+	 *            The position of the tile within the display (1-4)
+	 */
+	private void readTile(final AzulState state, final int display, final int count) {
+		boolean tryAgain = true;
+
+		while (tryAgain) {
+			tryAgain = false;
+			System.out.print("Tile " + count + " for display " + display + ": ");
+			final TileColor newTile = TileColor.parse(this.in.nextLine());
+			try {
+				if (newTile == null) {
+					throw new IllegalArgumentException("Tile must be one of {BYRKW}");
+				}
+
+				state.addDisplayTile(display, newTile);
+			} catch (final IllegalArgumentException e) {
+				System.out.println(e.getMessage());
+				tryAgain = true;
+			}
+		}
+	}
+
+	/**
+	 * @param input
+	 *            A line of user input that should be made up of exactly four of
+	 *            {B, Y, R, K, W} (case-insensitive)
+	 * @return The number of tiles of each color in the input
+	 * @throws IllegalArgumentException
+	 *             If the input is not formatted correctly
+	 */
+	private static int[] parseDisplayInput(final String input) throws IllegalArgumentException {
+		if (input.length() != 4) {
+			throw new IllegalArgumentException("Tiles must be 4 of {BYRKW}");
+		}
+
+		final int[] counts = new int[TileColor.NUM_COLORS];
+		for (int i = 0; i < 4; i++) {
+			final TileColor color = TileColor.fromSymbol(input.charAt(i));
+
+			if (color == null) {
+				throw new IllegalArgumentException("Tiles must be 4 of {BYRKW}");
+			}
+
+			counts[color.getCode()]++;
+		}
+
+		return counts;
+	}
+}
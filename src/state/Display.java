@@ -7,8 +7,12 @@ package state;
  */
 class Display extends TileLocation {
 
-	Display() {
-		super();
+	/**
+	 * @param index
+	 *            The index of this display in the game (1 or more)
+	 */
+	Display(final int index) {
+		super(index);
 	}
 
 	Display(final Display display) {
@@ -20,6 +24,6 @@ class Display extends TileLocation {
 	 */
 	@Override
 	public String toString() {
-		return "Display: " + this.tiles;
+		return "Display: " + this.tilesToString();
 	}
 }
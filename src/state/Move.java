@@ -0,0 +1,82 @@
+package state;
+
+/**
+ * This class holds the static methods for the compact move encoding used by
+ * {@link AzulState#generateMoves(int[])} and {@link AzulState#applyMove(int)}.
+ * A move is a single int made up of the tile location (bits 0-3), the color
+ * (bits 4-6), and the row choice plus one (bits 7-9), so that the -1 floor line
+ * choice is stored as 0.
+ * 
+ * Colors are stored as their codes (see {@link TileColor#getCode()}).
+ * 
+ * @author Aaron Tetens
+ */
+public final class Move {
+
+	/**
+	 * Enough room for every move from any state (10 tile locations, 5 colors, and
+	 * 6 row choices)
+	 */
+	public static final int MAX_MOVES = 300;
+
+	private Move() {
+	}
+
+	/**
+	 * @param tileLocation
+	 *            Is assumed to be 0-9
+	 * @param color
+	 *            Is assumed to be 0-4
+	 * @param rowChoice
+	 *            Is assumed to be from -1-4
+	 * @return The encoded move
+	 */
+	public static int encode(final int tileLocation, final int color, final int rowChoice) {
+		return tileLocation | color << 4 | (rowChoice + 1) << 7;
+	}
+
+	/**
+	 * @param move
+	 *            An encoded move
+	 * @return The tile location that the move takes tiles from
+	 */
+	public static int getTileLocation(final int move) {
+		return move & 15;
+	}
+
+	/**
+	 * @param move
+	 *            An encoded move
+	 * @return The color (0-4) that the move takes
+	 */
+	public static int getColor(final int move) {
+		return (move >>> 4) & 7;
+	}
+
+	/**
+	 * @param move
+	 *            An encoded move
+	 * @return The color that the move takes
+	 */
+	public static TileColor getTileChoice(final int move) {
+		return TileColor.fromCode(getColor(move));
+	}
+
+	/**
+	 * @param move
+	 *            An encoded move
+	 * @return The row that the move places tiles in (-1 for the floor line)
+	 */
+	public static int getRowChoice(final int move) {
+		return (move >>> 7) - 1;
+	}
+
+	/**
+	 * @param move
+	 *            An encoded move
+	 * @return A readable version of the move, e.g. "3 B 2"
+	 */
+	public static String toString(final int move) {
+		return getTileLocation(move) + " " + getTileChoice(move).getSymbol() + " " + getRowChoice(move);
+	}
+}
@@ -0,0 +1,39 @@
+package state;
+
+/**
+ * A MoveRecord is the token filled in by
+ * {@link AzulState#applyMove(int, TileColor, int, MoveRecord)} so that the move can
+ * later be reversed with {@link AzulState#undoMove(MoveRecord)}. A search can
+ * allocate one record per ply and reuse it, walking down and back up a single
+ * mutable AzulState instead of copying the state for every move.
+ * 
+ * @author Aaron Tetens
+ */
+public final class MoveRecord {
+
+	// the move itself
+	int tileLocation;
+	int color;
+	int rowChoice;
+
+	// where the taken tiles went
+	int numRemoved;
+	int numPlacedInRow;
+	int numPlacedInFloorLine;
+	int numExcess;
+
+	// the first player tile and the tiles moved from a display onto the table
+	boolean hadFirstPlayerTile;
+	boolean placedFirstPlayerTile;
+	final int[] spilledTiles = new int[5];
+
+	// whose turn it was before the move
+	int lastPlayer;
+	int currentPlayer;
+	int nextRoundFirstPlayer;
+
+	// if the move ended the round, the boards and bag as they were just before
+	// scoring (null otherwise)
+	PlayerBoard[] playerBoards;
+	TileBag tileBag;
+}
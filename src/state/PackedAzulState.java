@@ -0,0 +1,748 @@
+package state;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import api.GameState;
+
+/**
+ * This class is an alternative representation of {@link AzulState} that
+ * stores the entire game in a handful of primitive ints so that copying a state
+ * during the search is cheap. It follows the same rules as AzulState (including
+ * treating the ends of rounds as leaf nodes and refilling the displays randomly
+ * during simulation), but it is only ever refilled randomly, so it should be
+ * created from an existing AzulState with {@link AzulState#toPackedState()}
+ * when searching from a real game.
+ * 
+ * Colors are stored as their codes (see {@link TileColor#getCode()}). The bag,
+ * the lid, the table, and each display are stored as a single int holding five
+ * 5-bit tile counts (one per color). Each wall is a 25-bit mask (bit 5 * row +
+ * column), each set of pattern lines holds a 3-bit color and a 3-bit count for
+ * each row, and each floor line holds a 3-bit count plus a flag for the first
+ * player tile. Tiles that go to the floor line are sent to the lid right away,
+ * since the lid is not used again until the next refill.
+ * 
+ * The layout of the wall, the scoring of placed tiles and floor lines, and the
+ * end-of-game bonuses all come from {@link PlayerBoard}, so both
+ * representations always follow the same rules.
+ * 
+ * @author Aaron Tetens
+ */
+public class PackedAzulState implements GameState {
+
+	private static final int COUNT_BITS = 5;
+	private static final int COUNT_MASK = (1 << COUNT_BITS) - 1;
+	private static final int ALL_COUNTS_MASK = (1 << 5 * COUNT_BITS) - 1;
+	private static final int TABLE_FIRST_PLAYER_TILE = 1 << 5 * COUNT_BITS;
+
+	private static final int PATTERN_LINE_BITS = 6;
+	private static final int PATTERN_LINE_MASK = (1 << PATTERN_LINE_BITS) - 1;
+
+	private static final int FLOOR_LINE_COUNT_MASK = 7;
+	private static final int FLOOR_LINE_FIRST_PLAYER_TILE = 8;
+
+	private int bag;
+	private int lid;
+	private final int[] tileLocations;
+	private final int[] walls;
+	private final int[] patternLines;
+	private final int[] floorLines;
+	private final int[] scores;
+
+	private int lastPlayer;
+	private int currentPlayer;
+	private int nextRoundFirstPlayer;
+
+	// shared with every copy of this state, as in AzulState
+	private final RandomSource random;
+
+	/**
+	 * Creates a new game whose displays are refilled randomly, using
+	 * {@link ThreadLocalRandomSource#INSTANCE}.
+	 * 
+	 * @param numPlayers
+	 *            The number of players to create the game for
+	 * @throws IllegalArgumentException
+	 */
+	public PackedAzulState(final int numPlayers) throws IllegalArgumentException {
+		this(numPlayers, ThreadLocalRandomSource.INSTANCE);
+	}
+
+	/**
+	 * Creates a new game whose displays are refilled randomly.
+	 * 
+	 * @param numPlayers
+	 *            The number of players to create the game for
+	 * @param random
+	 *            The source of random numbers for refills and random moves by this
+	 *            state and every state that follows from it
+	 * @throws IllegalArgumentException
+	 */
+	public PackedAzulState(final int numPlayers, final RandomSource random) throws IllegalArgumentException {
+		if (numPlayers < 2 || numPlayers > 4) {
+			throw new IllegalArgumentException("Tried to start a game with " + numPlayers + " players (2-4 required)");
+		}
+		if (random == null) {
+			throw new IllegalArgumentException("Tried to start a game with a null random source");
+		}
+
+		this.bag = 0;
+		for (int color = 0; color < 5; color++) {
+			this.bag = addCount(this.bag, color, 20);
+		}
+		this.lid = 0;
+
+		this.tileLocations = new int[2 * numPlayers + 2]; // 2n + 1 displays, plus one for the table
+		this.tileLocations[0] = TABLE_FIRST_PLAYER_TILE;
+
+		this.walls = new int[numPlayers];
+		this.patternLines = new int[numPlayers];
+		this.floorLines = new int[numPlayers];
+		this.scores = new int[numPlayers];
+
+		this.lastPlayer = -1;
+		this.currentPlayer = 0;
+		this.nextRoundFirstPlayer = -1;
+
+		this.random = random;
+
+		this.refillDisplaysRandomly();
+	}
+
+	/**
+	 * Used by {@link AzulState#toPackedState()}. All of the given values are
+	 * assumed to already be in the packed format described by this class.
+	 */
+	PackedAzulState(final int bag, final int lid, final int[] tileLocations, final int[] walls,
+			final int[] patternLines, final int[] floorLines, final int[] scores, final int lastPlayer,
+			final int currentPlayer, final int nextRoundFirstPlayer, final RandomSource random) {
+		this.bag = bag;
+		this.lid = lid;
+		this.tileLocations = tileLocations;
+		this.walls = walls;
+		this.patternLines = patternLines;
+		this.floorLines = floorLines;
+		this.scores = scores;
+		this.lastPlayer = lastPlayer;
+		this.currentPlayer = currentPlayer;
+		this.nextRoundFirstPlayer = nextRoundFirstPlayer;
+		this.random = random;
+	}
+
+	private PackedAzulState(final PackedAzulState state) {
+		this.bag = state.bag;
+		this.lid = state.lid;
+		this.tileLocations = state.tileLocations.clone();
+		this.walls = state.walls.clone();
+		this.patternLines = state.patternLines.clone();
+		this.floorLines = state.floorLines.clone();
+		this.scores = state.scores.clone();
+		this.lastPlayer = state.lastPlayer;
+		this.currentPlayer = state.currentPlayer;
+		this.nextRoundFirstPlayer = state.nextRoundFirstPlayer;
+		this.random = state.random;
+	}
+
+	/**
+	 * @param counts
+	 *            Five packed tile counts
+	 * @param color
+	 *            Is assumed to be 0-4
+	 * @return The number of tiles of the given color
+	 */
+	static int getCount(final int counts, final int color) {
+		return (counts >>> COUNT_BITS * color) & COUNT_MASK;
+	}
+
+	/**
+	 * @param counts
+	 *            Five packed tile counts
+	 * @param color
+	 *            Is assumed to be 0-4
+	 * @param numTiles
+	 *            The number of tiles to add (the resulting count is assumed to
+	 *            be at most 31)
+	 * @return The given counts with numTiles added to the given color
+	 */
+	static int addCount(final int counts, final int color, final int numTiles) {
+		return counts + (numTiles << COUNT_BITS * color);
+	}
+
+	/**
+	 * @param counts
+	 *            Five packed tile counts
+	 * @return The total number of tiles
+	 */
+	private static int getTotalCount(final int counts) {
+		int total = 0;
+		for (int color = 0; color < 5; color++) {
+			total += getCount(counts, color);
+		}
+		return total;
+	}
+
+	/**
+	 * @param color
+	 *            Is assumed to be 0-4
+	 * @param numTiles
+	 *            Is assumed to be 0-5
+	 * @return A single packed pattern line
+	 */
+	static int packPatternLine(final int color, final int numTiles) {
+		return color << 3 | numTiles;
+	}
+
+	/**
+	 * @param row
+	 *            Is assumed to be 0-4
+	 * @param color
+	 *            Is assumed to be 0-4
+	 * @return The column in which the given color occurs in the wall in the given
+	 *         row
+	 */
+	static int getWallColumn(final int row, final int color) {
+		return PlayerBoard.WALL_COLUMNS[row][color];
+	}
+
+	/**
+	 * @param numTiles
+	 *            Is assumed to be 0-7
+	 * @param hasFirstPlayerTile
+	 *            Whether or not one of the tiles is the first player tile
+	 * @return A single packed floor line
+	 */
+	static int packFloorLine(final int numTiles, final boolean hasFirstPlayerTile) {
+		return numTiles | (hasFirstPlayerTile ? FLOOR_LINE_FIRST_PLAYER_TILE : 0);
+	}
+
+	/**
+	 * @param hasFirstPlayerTile
+	 *            Whether or not the table has the first player tile
+	 * @return The flag to OR into the packed table counts
+	 */
+	static int packTableFlag(final boolean hasFirstPlayerTile) {
+		return hasFirstPlayerTile ? TABLE_FIRST_PLAYER_TILE : 0;
+	}
+
+	/**
+	 * This method applies the given move to the current state. The move is
+	 * assumed to be legal. If the move takes the last tiles for the round, this
+	 * method will score the round and, if the game is not over, return the first
+	 * player tile to the table and set the new current player. The displays are
+	 * never refilled here; that happens lazily in
+	 * {@link PackedAzulState#getRandomNextState()}.
+	 * 
+	 * @param tileLocation
+	 *            Number of the tile location from where the player is taking tiles
+	 *            (0 for the table)
+	 * @param color
+	 *            The color of tiles that the player has decided to take (0-4)
+	 * @param row
+	 *            The index of the pattern line that the player will add the
+	 *            selected tiles to (-1 to add directly to the floor line)
+	 */
+	private void makeMove(final int tileLocation, final int color, final int row) {
+		final int player = this.currentPlayer;
+
+		// remove all of the chosen color from the chosen location
+		final int numRemoved = getCount(this.tileLocations[tileLocation], color);
+		this.tileLocations[tileLocation] &= ~(COUNT_MASK << COUNT_BITS * color);
+
+		// add the tiles to the given row
+		int numToFloorLine = numRemoved;
+		if (row != -1) {
+			final int shift = PATTERN_LINE_BITS * row;
+			final int numInRow = (this.patternLines[player] >>> shift) & 7;
+			final int numPlaced = Math.min(numRemoved, row + 1 - numInRow);
+
+			this.patternLines[player] = (this.patternLines[player] & ~(PATTERN_LINE_MASK << shift))
+					| (packPatternLine(color, numInRow + numPlaced) << shift);
+			numToFloorLine -= numPlaced;
+		}
+
+		// the rest go to the floor line, but all of them end up in the lid anyway
+		if (numToFloorLine > 0) {
+			final int numInFloorLine = this.floorLines[player] & FLOOR_LINE_COUNT_MASK;
+			this.floorLines[player] += Math.min(numToFloorLine, 7 - numInFloorLine);
+			this.lid = addCount(this.lid, color, numToFloorLine);
+		}
+
+		if (tileLocation == 0) {
+			// if we took from the table, add the first player tile to the floor line if no
+			// one has taken it yet
+			if ((this.tileLocations[0] & TABLE_FIRST_PLAYER_TILE) != 0) {
+				this.tileLocations[0] &= ~TABLE_FIRST_PLAYER_TILE;
+
+				if ((this.floorLines[player] & FLOOR_LINE_COUNT_MASK) < 7) {
+					this.floorLines[player] = (this.floorLines[player] + 1) | FLOOR_LINE_FIRST_PLAYER_TILE;
+				}
+
+				this.nextRoundFirstPlayer = player;
+			}
+		} else {
+			// if we took from a display, move the remaining tiles onto the table - no count
+			// can reach 32, so the packed counts can simply be added together
+			this.tileLocations[0] += this.tileLocations[tileLocation];
+			this.tileLocations[tileLocation] = 0;
+		}
+
+		// the turn is over, so update the last player
+		this.lastPlayer = player;
+
+		// if the round is not over, update current player and return
+		if (!this.isRoundOver()) {
+			this.currentPlayer = (player < this.scores.length - 1) ? player + 1 : 0;
+			return;
+		}
+
+		// scoring
+		for (int i = 0; i < this.scores.length; i++) {
+			this.doScoring(i);
+		}
+
+		// next round setup
+		if (this.nextRoundFirstPlayer != -1) {
+			this.currentPlayer = this.nextRoundFirstPlayer;
+		} else {
+			this.currentPlayer = (player < this.scores.length - 1) ? player + 1 : 0;
+		}
+
+		if (!this.isGameOver()) {
+			this.tileLocations[0] |= TABLE_FIRST_PLAYER_TILE;
+			this.nextRoundFirstPlayer = -1;
+		}
+	}
+
+	/**
+	 * Fills in wall tiles for the given player's completed pattern lines, empties
+	 * their floor line, and updates their score.
+	 * 
+	 * @param player
+	 *            The player to score
+	 */
+	private void doScoring(final int player) {
+		int score = this.scores[player];
+
+		for (int row = 0; row < 5; row++) {
+			final int shift = PATTERN_LINE_BITS * row;
+			final int line = (this.patternLines[player] >>> shift) & PATTERN_LINE_MASK;
+
+			// skip rows that are not ready to be scored
+			if ((line & 7) != row + 1) {
+				continue;
+			}
+
+			final int color = line >>> 3;
+			final int column = getWallColumn(row, color);
+			this.walls[player] |= 1 << 5 * row + column;
+
+			score += getPlacementScore(this.walls[player], row, column);
+
+			// clear the row and add the extra tiles to the lid
+			this.patternLines[player] &= ~(PATTERN_LINE_MASK << shift);
+			this.lid = addCount(this.lid, color, row);
+		}
+
+		// handle floor line
+		score += PlayerBoard.getFloorLineScore(this.floorLines[player] & FLOOR_LINE_COUNT_MASK);
+		this.floorLines[player] = 0;
+
+		// score cannot go below zero
+		this.scores[player] = Math.max(score, 0);
+	}
+
+	/**
+	 * @param wall
+	 *            The wall after the tile has been placed
+	 * @param row
+	 *            The row of the placed tile
+	 * @param column
+	 *            The column of the placed tile
+	 * @return The number of points the placed tile is worth, as in
+	 *         {@link PlayerBoard#getPlacementScore(int, int, int, int)}
+	 */
+	private static int getPlacementScore(final int wall, final int row, final int column) {
+		// gather the column into 5 bits, one per row
+		int columnOccupancy = 0;
+		for (int i = 0; i < 5; i++) {
+			columnOccupancy |= (wall >>> 5 * i + column & 1) << i;
+		}
+
+		return PlayerBoard.getPlacementScore(wall >>> 5 * row & 31, columnOccupancy, row, column);
+	}
+
+	/**
+	 * Refills the displays randomly. This method assumes that all displays are
+	 * empty and that the table has no tiles on it.
+	 */
+	private void refillDisplaysRandomly() {
+		int numInBag = getTotalCount(this.bag);
+
+		for (int i = 1; i < this.tileLocations.length; i++) {
+			for (int count = 0; count < 4; count++) {
+				if (numInBag == 0) {
+					// if the lid and bag are out of tiles, just stop drawing
+					if (this.lid == 0) {
+						return;
+					}
+
+					this.bag = this.lid;
+					this.lid = 0;
+					numInBag = getTotalCount(this.bag);
+				}
+
+				// pick a color with probability proportional to its count
+				int randomIndex = this.random.nextInt(numInBag);
+				int color = 0;
+				while (randomIndex >= getCount(this.bag, color)) {
+					randomIndex -= getCount(this.bag, color);
+					color++;
+				}
+
+				this.bag = addCount(this.bag, color, -1);
+				this.tileLocations[i] = addCount(this.tileLocations[i], color, 1);
+				numInBag--;
+			}
+		}
+	}
+
+	/**
+	 * @return Whether or not the current round is over
+	 */
+	public boolean isRoundOver() {
+		for (final int tileLocation : this.tileLocations) {
+			if ((tileLocation & ALL_COUNTS_MASK) != 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return Whether or not any player has completed a wall row
+	 */
+	private boolean isGameOver() {
+		for (final int wall : this.walls) {
+			for (int row = 0; row < 5; row++) {
+				if ((wall >>> 5 * row & 31) == 31) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return The player who makes the next move from this state
+	 */
+	public int getCurrentPlayer() {
+		return this.currentPlayer;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getLastPlayer() {
+		return this.lastPlayer;
+	}
+
+	/**
+	 * Writes every legal move for the current player into the given array, using
+	 * the same rules as {@link AzulState#generateMoves(int[])}: a (location, color)
+	 * pair is only sent directly to the floor line if no row can take it. As in
+	 * {@link AzulState#generateDistinctMoves(int[])}, displays with the same tiles
+	 * as an earlier display can be skipped.
+	 * 
+	 * @param moves
+	 *            Is assumed to have room for at least {@link Move#MAX_MOVES} moves
+	 * @param skipDuplicateDisplays
+	 *            Whether or not to skip displays with the same tiles as an earlier
+	 *            display
+	 * @return The number of moves written
+	 */
+	private int generateMoves(final int[] moves, final boolean skipDuplicateDisplays) {
+		final int player = this.currentPlayer;
+		int numMoves = 0;
+
+		for (int tileLocation = 0; tileLocation < this.tileLocations.length; tileLocation++) {
+			if (skipDuplicateDisplays && this.isDuplicateDisplay(tileLocation)) {
+				continue;
+			}
+
+			final int counts = this.tileLocations[tileLocation];
+
+			for (int color = 0; color < 5; color++) {
+				if (getCount(counts, color) == 0) {
+					continue;
+				}
+
+				final int numBefore = numMoves;
+
+				for (int row = 0; row < 5; row++) {
+					// a row is legal if the wall does not have the color yet and the pattern line
+					// is either empty or already holds the color
+					if ((this.walls[player] & 1 << 5 * row + getWallColumn(row, color)) != 0) {
+						continue;
+					}
+
+					final int line = (this.patternLines[player] >>> PATTERN_LINE_BITS * row) & PATTERN_LINE_MASK;
+					if ((line & 7) != 0 && (line >>> 3) != color) {
+						continue;
+					}
+
+					moves[numMoves++] = Move.encode(tileLocation, color, row);
+				}
+
+				if (numMoves == numBefore) {
+					moves[numMoves++] = Move.encode(tileLocation, color, -1);
+				}
+			}
+		}
+
+		return numMoves;
+	}
+
+	/**
+	 * @param tileLocation
+	 *            The index of a tile location
+	 * @return Whether or not the given tile location is a non-empty display with
+	 *         exactly the same tiles as an earlier display
+	 */
+	private boolean isDuplicateDisplay(final int tileLocation) {
+		final int counts = this.tileLocations[tileLocation];
+		if (tileLocation < 2 || counts == 0) {
+			return false;
+		}
+
+		// a display holds only counts, so equal ints mean equal tiles
+		for (int i = 1; i < tileLocation; i++) {
+			if (this.tileLocations[i] == counts) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Applies a move produced by {@link PackedAzulState#generateMoves(int[], boolean)}.
+	 * 
+	 * @param move
+	 *            The encoded move
+	 */
+	private void makeMove(final int move) {
+		this.makeMove(Move.getTileLocation(move), Move.getColor(move), Move.getRowChoice(move));
+	}
+
+	/**
+	 * {@inheritDoc} As in {@link AzulState#getNextStates()}, only one of several
+	 * displays with the same tiles is expanded.
+	 */
+	@Override
+	public List<GameState> getNextStates() {
+		final List<GameState> nextStates = new ArrayList<>();
+
+		// if the round is over, then this state is not expandable
+		if (this.isRoundOver()) {
+			return nextStates;
+		}
+
+		final int[] moves = new int[Move.MAX_MOVES];
+		final int numMoves = this.generateMoves(moves, true);
+
+		for (int i = 0; i < numMoves; i++) {
+			final PackedAzulState nextState = new PackedAzulState(this);
+			nextState.makeMove(moves[i]);
+			nextStates.add(nextState);
+		}
+
+		return nextStates;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public GameState getRandomNextState() {
+		final PackedAzulState copy = new PackedAzulState(this);
+
+		if (copy.isRoundOver()) {
+			copy.refillDisplaysRandomly();
+		}
+
+		final int[] moves = new int[Move.MAX_MOVES];
+		final int numMoves = copy.generateMoves(moves, false);
+		copy.makeMove(moves[this.random.nextInt(numMoves)]);
+
+		return copy;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<Integer> getWinningPlayers() {
+		final List<Integer> winningPlayers = new ArrayList<>();
+
+		// if game is not over, there are no winners to report
+		if (!this.isGameOver()) {
+			return winningPlayers;
+		}
+
+		// if game is over, winner is decided by final score, then by most completed
+		// rows
+		int finalScoreOfBest = -1;
+		int numCompletedWallRowsOfBest = -1;
+
+		for (int i = 0; i < this.scores.length; i++) {
+			final int finalScore = this.getFinalScore(i);
+			final int numCompletedWallRows = this.getNumCompletedWallRows(i);
+
+			if (finalScore > finalScoreOfBest) {
+				winningPlayers.clear();
+				winningPlayers.add(i);
+
+				finalScoreOfBest = finalScore;
+				numCompletedWallRowsOfBest = numCompletedWallRows;
+			} else if (finalScore == finalScoreOfBest) {
+				if (numCompletedWallRows > numCompletedWallRowsOfBest) {
+					winningPlayers.clear();
+					winningPlayers.add(i);
+
+					numCompletedWallRowsOfBest = numCompletedWallRows;
+				} else if (numCompletedWallRows == numCompletedWallRowsOfBest) {
+					winningPlayers.add(i);
+				}
+			}
+		}
+
+		return winningPlayers;
+	}
+
+	/**
+	 * @param player
+	 *            The player to check
+	 * @return The number of rows that the given player has completed on their wall
+	 */
+	private int getNumCompletedWallRows(final int player) {
+		int numCompletedWallRows = 0;
+		for (int row = 0; row < 5; row++) {
+			if ((this.walls[player] >>> 5 * row & 31) == 31) {
+				numCompletedWallRows++;
+			}
+		}
+		return numCompletedWallRows;
+	}
+
+	/**
+	 * @param player
+	 *            The player to check
+	 * @return The final score for the given player (score plus end-of-game
+	 *         bonuses)
+	 */
+	private int getFinalScore(final int player) {
+		final int wall = this.walls[player];
+
+		int numCompletedWallColumns = 0;
+		for (int column = 0; column < 5; column++) {
+			final int columnMask = 0x108421 << column; // one bit in each row
+			if ((wall & columnMask) == columnMask) {
+				numCompletedWallColumns++;
+			}
+		}
+
+		int numCompletedColorSets = 0;
+		for (int color = 0; color < 5; color++) {
+			boolean isCompletedColorSet = true;
+			for (int row = 0; row < 5; row++) {
+				if ((wall & 1 << 5 * row + getWallColumn(row, color)) == 0) {
+					isCompletedColorSet = false;
+					break;
+				}
+			}
+
+			if (isCompletedColorSet) {
+				numCompletedColorSets++;
+			}
+		}
+
+		return this.scores[player] + PlayerBoard.getEndOfGameBonus(this.getNumCompletedWallRows(player),
+				numCompletedWallColumns, numCompletedColorSets);
+	}
+
+	/**
+	 * @param counts
+	 *            Five packed tile counts
+	 * @return The counts written as a map-like string, e.g. {B=2, K=1}
+	 */
+	private static String countsToString(final int counts) {
+		final StringBuilder sb = new StringBuilder("{");
+		for (int color = 0; color < 5; color++) {
+			if (getCount(counts, color) > 0) {
+				if (sb.length() > 1) {
+					sb.append(", ");
+				}
+				sb.append(TileColor.getSymbol(color)).append('=').append(getCount(counts, color));
+			}
+		}
+		return sb.append('}').toString();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("===================================================================\n");
+		sb.append("Last Player = " + this.lastPlayer + "\n");
+		sb.append("Current Player = " + this.currentPlayer + "\n");
+		sb.append("Player to start next round = " + this.nextRoundFirstPlayer + "\n");
+		sb.append("Tiles in bag = " + countsToString(this.bag) + "\n");
+		sb.append("Tiles in lid = " + countsToString(this.lid));
+		sb.append("\nTable: " + countsToString(this.tileLocations[0]) + ", hasFirstPlayerTile = "
+				+ ((this.tileLocations[0] & TABLE_FIRST_PLAYER_TILE) != 0));
+		for (int i = 1; i < this.tileLocations.length; i++) {
+			sb.append("\nDisplay: " + countsToString(this.tileLocations[i]));
+		}
+		for (int i = 0; i < this.scores.length; i++) {
+			sb.append("\n===================================================================");
+			sb.append("\nPlayer " + i + "\n");
+			sb.append("Final score = " + this.getFinalScore(i) + "\n");
+			sb.append("Pattern lines = \n");
+			for (int row = 0; row < 5; row++) {
+				final int line = (this.patternLines[i] >>> PATTERN_LINE_BITS * row) & PATTERN_LINE_MASK;
+				for (int j = 0; j < 5; j++) {
+					if (j < 4 - row) {
+						sb.append('X');
+					} else if (j > 4 - (line & 7)) {
+						sb.append(TileColor.getSymbol(line >>> 3));
+					} else {
+						sb.append('_');
+					}
+				}
+				sb.append("\n");
+			}
+			sb.append("Wall = \n");
+			for (int row = 0; row < 5; row++) {
+				for (int column = 0; column < 5; column++) {
+					if ((this.walls[i] & 1 << 5 * row + column) != 0) {
+						sb.append(TileColor.getSymbol((column - row + 5) % 5));
+					} else {
+						sb.append('_');
+					}
+				}
+				sb.append("\n");
+			}
+			sb.append("Floor line = \n");
+			sb.append(this.floorLines[i] & FLOOR_LINE_COUNT_MASK).append(" tile(s)");
+			if ((this.floorLines[i] & FLOOR_LINE_FIRST_PLAYER_TILE) != 0) {
+				sb.append(", including the first player tile");
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -1,175 +1,279 @@
 package state;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * This class stores all of the information about a player's board, which
  * contains the tiles in their rows, floor line, and wall, as well as their
  * current score.
  * 
- * Tiles are stored as strings of length one: B = Blue, Y = Yellow, R = Red, K =
- * Black, W = White, 1 = First Player Tile, _ = No Tile, and X = Invalid
- * Placement
+ * Tiles are stored as color codes (see {@link TileColor#getCode()}), with
+ * {@link PlayerBoard#EMPTY} for no tile and {@link PlayerBoard#FIRST_PLAYER_TILE}
+ * for the first player tile in the floor line. Each pattern line is stored as a
+ * color and a count, since it can only ever hold one color at a time.
+ * 
+ * The wall is stored as a 25-bit mask with bit 5 * row + column set for every
+ * placed tile, along with its transpose (bit 5 * column + row) so that both the
+ * row and the column through a tile can be read off as 5-bit occupancies. The
+ * color of a wall tile is implied by its position, and placement points are
+ * looked up from {@link PlayerBoard#RUN_LENGTHS} instead of walking the wall.
+ * 
+ * The number of tiles in each wall row, column, and color, as well as the
+ * number of completed rows, columns, and color sets, are kept up to date as
+ * tiles are placed, so that the end-of-game bonuses and game over checks never
+ * need to look at the wall itself.
+ * 
+ * Likewise, a mask of legal (color, row) placements is updated whenever a
+ * pattern line is started or cleared or a wall tile is placed, so that move
+ * generation can read the legal rows for a color with a single shift. A
+ * Zobrist hash of the pattern lines, wall, and floor line (see {@link Zobrist})
+ * is also kept up to date, keyed by the index of the player who owns the board.
  * 
  * @author Aaron Tetens
  */
 class PlayerBoard {
 
-	private static final String[][] WALL_PLACEMENTS = { { "B", "Y", "R", "K", "W" }, { "W", "B", "Y", "R", "K" },
-			{ "K", "W", "B", "Y", "R" }, { "R", "K", "W", "B", "Y" }, { "Y", "R", "K", "W", "B" } };
-	private static final int[] FLOOR_LINE_VALUES = { -1, -1, -2, -2, -2, -3, -3 };
+	static final byte EMPTY = -1;
+	static final byte FIRST_PLAYER_TILE = TileColor.NUM_COLORS;
 
-	private final String[][] patternLines;
-	private final String[][] wall;
-	private final String[] floorLine;
+	/**
+	 * WALL_COLUMNS[row][color] is the column in which the given color occurs in
+	 * the wall in the given row
+	 */
+	static final byte[][] WALL_COLUMNS = { { 0, 1, 2, 3, 4 }, { 1, 2, 3, 4, 0 }, { 2, 3, 4, 0, 1 },
+			{ 3, 4, 0, 1, 2 }, { 4, 0, 1, 2, 3 } };
 
-	private int score;
+	/**
+	 * RUN_LENGTHS[occupancy][position] is the length of the run of consecutive
+	 * occupied spaces through the given position of a 5-space row or column with
+	 * the given 5-bit occupancy (0 if the position itself is not occupied)
+	 */
+	private static final byte[][] RUN_LENGTHS = new byte[32][5];
 
-	PlayerBoard() {
-		this.patternLines = new String[5][5];
-		for (int i = 0; i < 5; i++) {
-			for (int j = 0; j < 5; j++) {
-				if (j < 4 - i) {
-					this.patternLines[i][j] = "X";
-				} else {
-					this.patternLines[i][j] = "_";
+	/**
+	 * LEGAL_PLACEMENT_ROW[colors] has bit 5 * color set for each color in the
+	 * given 5-bit set of colors, which spreads the set out into the layout of
+	 * {@link PlayerBoard#getLegalPlacementMask()} for row 0 (shift it left by the
+	 * row for the other rows)
+	 */
+	private static final int[] LEGAL_PLACEMENT_ROW = new int[32];
+
+	static {
+		for (int colors = 0; colors < 32; colors++) {
+			for (int color = 0; color < TileColor.NUM_COLORS; color++) {
+				if ((colors & 1 << color) != 0) {
+					LEGAL_PLACEMENT_ROW[colors] |= 1 << 5 * color;
 				}
 			}
 		}
 
-		this.wall = new String[5][5];
-		for (int i = 0; i < 5; i++) {
-			for (int j = 0; j < 5; j++) {
-				this.wall[i][j] = "_";
+		for (int occupancy = 0; occupancy < 32; occupancy++) {
+			for (int position = 0; position < 5; position++) {
+				int runLength = 0;
+
+				if ((occupancy & 1 << position) != 0) {
+					runLength = 1;
+					for (int left = position - 1; left >= 0 && (occupancy & 1 << left) != 0; left--) {
+						runLength++;
+					}
+					for (int right = position + 1; right < 5 && (occupancy & 1 << right) != 0; right++) {
+						runLength++;
+					}
+				}
+
+				RUN_LENGTHS[occupancy][position] = (byte) runLength;
 			}
 		}
+	}
 
-		this.floorLine = new String[7];
-		for (int i = 0; i < 7; i++) {
-			this.floorLine[i] = "_";
+	/**
+	 * @param rowOccupancy
+	 *            The 5-bit occupancy of the row of the placed tile (bit column),
+	 *            including the placed tile
+	 * @param columnOccupancy
+	 *            The 5-bit occupancy of the column of the placed tile (bit row),
+	 *            including the placed tile
+	 * @param row
+	 *            The row of the placed tile
+	 * @param column
+	 *            The column of the placed tile
+	 * @return The number of points the placed tile is worth
+	 */
+	static int getPlacementScore(final int rowOccupancy, final int columnOccupancy, final int row,
+			final int column) {
+		// look up the runs through the placed tile in its row and column
+		final int rowLength = RUN_LENGTHS[rowOccupancy][column];
+		final int colLength = RUN_LENGTHS[columnOccupancy][row];
+
+		// if the tile is standalone, it is worth exactly one point
+		final int tileScore = ((rowLength == 1) ? 0 : rowLength) + ((colLength == 1) ? 0 : colLength);
+		return Math.max(tileScore, 1);
+	}
+
+	private static final int[] FLOOR_LINE_VALUES = { -1, -1, -2, -2, -2, -3, -3 };
+
+	/**
+	 * @param numFloorLineTiles
+	 *            The number of tiles in a floor line (at most 7)
+	 * @return The (negative) number of points that the tiles in the floor line
+	 *         are worth
+	 */
+	static int getFloorLineScore(final int numFloorLineTiles) {
+		int score = 0;
+		for (int i = 0; i < numFloorLineTiles; i++) {
+			score += FLOOR_LINE_VALUES[i];
 		}
+		return score;
+	}
 
-		this.score = 0;
+	/**
+	 * @param numCompletedWallRows
+	 *            The number of completed rows on a wall
+	 * @param numCompletedWallColumns
+	 *            The number of completed columns on a wall
+	 * @param numCompletedColorSets
+	 *            The number of colors with all five tiles on a wall
+	 * @return The end-of-game bonus for the wall
+	 */
+	static int getEndOfGameBonus(final int numCompletedWallRows, final int numCompletedWallColumns,
+			final int numCompletedColorSets) {
+		return 2 * numCompletedWallRows + 7 * numCompletedWallColumns + 10 * numCompletedColorSets;
 	}
 
-	PlayerBoard(final PlayerBoard board) {
-		this.patternLines = new String[5][5];
-		for (int i = 0; i < 5; i++) {
-			for (int j = 0; j < 5; j++) {
-				this.patternLines[i][j] = board.patternLines[i][j];
-			}
-		}
+	private final int player;
 
-		this.wall = new String[5][5];
-		for (int i = 0; i < 5; i++) {
-			for (int j = 0; j < 5; j++) {
-				this.wall[i][j] = board.wall[i][j];
-			}
-		}
+	private final byte[] patternLineColors;
+	private final int[] patternLineCounts;
+	private final byte[] floorLine;
 
-		this.floorLine = new String[7];
-		for (int i = 0; i < 7; i++) {
-			this.floorLine[i] = board.floorLine[i];
-		}
+	private final byte[] wallRowCounts;
+	private final byte[] wallColumnCounts;
+	private final byte[] wallColorCounts;
 
-		this.score = board.score;
-	}
+	private int wall;
+	private int wallColumns;
+	private int numCompletedWallRows;
+	private int numCompletedWallColumns;
+	private int numCompletedColorSets;
+	private int legalPlacementMask;
+
+	private int numFloorLineTiles;
+	private int score;
+
+	// the hash of everything but the score, which is XORed in when the key is
+	// asked for
+	private long hash;
 
 	/**
-	 * @return The number of rows that this player board has completed on its wall
+	 * @param player
+	 *            The index of the player who owns this board
 	 */
-	int getNumCompletedWallRows() {
-		int numCompletedWallRows = 0;
+	PlayerBoard(final int player) {
+		this.player = player;
 
+		this.patternLineColors = new byte[5];
+		this.patternLineCounts = new int[5];
 		for (int i = 0; i < 5; i++) {
-			boolean isCompletedRow = true;
-
-			for (int j = 0; j < 5; j++) {
-				if (this.wall[i][j].equals("_")) {
-					isCompletedRow = false;
-					break;
-				}
-			}
+			this.patternLineColors[i] = EMPTY;
+		}
 
-			if (isCompletedRow) {
-				numCompletedWallRows++;
-			}
+		this.floorLine = new byte[7];
+		for (int i = 0; i < 7; i++) {
+			this.floorLine[i] = EMPTY;
 		}
 
-		return numCompletedWallRows;
+		this.wallRowCounts = new byte[5];
+		this.wallColumnCounts = new byte[5];
+		this.wallColorCounts = new byte[TileColor.NUM_COLORS];
+
+		this.wall = 0;
+		this.wallColumns = 0;
+		this.numCompletedWallRows = 0;
+		this.numCompletedWallColumns = 0;
+		this.numCompletedColorSets = 0;
+		this.legalPlacementMask = (1 << 25) - 1;
+		this.numFloorLineTiles = 0;
+		this.score = 0;
+		this.hash = 0;
+	}
+
+	PlayerBoard(final PlayerBoard board) {
+		this.player = board.player;
+		this.patternLineColors = board.patternLineColors.clone();
+		this.patternLineCounts = board.patternLineCounts.clone();
+		this.floorLine = board.floorLine.clone();
+
+		this.wallRowCounts = board.wallRowCounts.clone();
+		this.wallColumnCounts = board.wallColumnCounts.clone();
+		this.wallColorCounts = board.wallColorCounts.clone();
+
+		this.wall = board.wall;
+		this.wallColumns = board.wallColumns;
+		this.numCompletedWallRows = board.numCompletedWallRows;
+		this.numCompletedWallColumns = board.numCompletedWallColumns;
+		this.numCompletedColorSets = board.numCompletedColorSets;
+		this.legalPlacementMask = board.legalPlacementMask;
+		this.numFloorLineTiles = board.numFloorLineTiles;
+		this.score = board.score;
+		this.hash = board.hash;
 	}
 
 	/**
-	 * @return The final score for this player board (score plus end-of-game
-	 *         bonuses)
+	 * Sets the number of tiles in the given pattern line, keeping the hash up to
+	 * date. The color of the pattern line is assumed to be set.
+	 * 
+	 * @param row
+	 *            Is assumed to be 0-4
+	 * @param count
+	 *            The new number of tiles in the pattern line
 	 */
-	int getFinalScore() {
-		return this.score + 2 * this.getNumCompletedWallRows() + 7 * this.getNumCompletedWallColumns()
-				+ 10 * this.getNumCompletedColorSets();
+	private void setPatternLineCount(final int row, final int count) {
+		final int color = this.patternLineColors[row];
+		this.hash ^= Zobrist.patternLine(this.player, row, color, this.patternLineCounts[row])
+				^ Zobrist.patternLine(this.player, row, color, count);
+		this.patternLineCounts[row] = count;
 	}
 
 	/**
-	 * @return The number of columns that this player board has completed on its
-	 *         wall
+	 * Sets a single space of the floor line, keeping the hash up to date.
+	 * 
+	 * @param space
+	 *            Is assumed to be 0-6
+	 * @param tile
+	 *            A color code, {@link PlayerBoard#EMPTY}, or
+	 *            {@link PlayerBoard#FIRST_PLAYER_TILE}
 	 */
-	private int getNumCompletedWallColumns() {
-		int numCompletedWallColumns = 0;
-
-		for (int j = 0; j < 5; j++) {
-			boolean isCompletedColumn = true;
-
-			for (int i = 0; i < 5; i++) {
-				if (this.wall[i][j].equals("_")) {
-					isCompletedColumn = false;
-					break;
-				}
-			}
-
-			if (isCompletedColumn) {
-				numCompletedWallColumns++;
-			}
+	private void setFloorLineTile(final int space, final byte tile) {
+		if (this.floorLine[space] != EMPTY) {
+			this.hash ^= Zobrist.floorLine(this.player, space, this.floorLine[space]);
 		}
-
-		return numCompletedWallColumns;
+		if (tile != EMPTY) {
+			this.hash ^= Zobrist.floorLine(this.player, space, tile);
+		}
+		this.floorLine[space] = tile;
 	}
 
 	/**
-	 * @return The number of colors on this player board that have all five of its
-	 *         tiles placed on the wall
+	 * @return The number of rows that this player board has completed on its wall
 	 */
-	int getNumCompletedColorSets() {
-		final Map<String, Integer> colorFreqs = new HashMap<>();
-		colorFreqs.put("B", 0);
-		colorFreqs.put("Y", 0);
-		colorFreqs.put("R", 0);
-		colorFreqs.put("K", 0);
-		colorFreqs.put("W", 0);
-
-		for (int i = 0; i < 5; i++) {
-			for (int j = 0; j < 5; j++) {
-				if (!this.wall[i][j].equals("_")) {
-					final String color = this.wall[i][j];
-					colorFreqs.put(color, colorFreqs.get(color) + 1);
-				}
-			}
-		}
-
-		int numCompletedColorSets = 0;
-		for (final String color : colorFreqs.keySet()) {
-			if (colorFreqs.get(color) == 5) {
-				numCompletedColorSets++;
-			}
-		}
+	int getNumCompletedWallRows() {
+		return this.numCompletedWallRows;
+	}
 
-		return numCompletedColorSets;
+	/**
+	 * @return The final score for this player board (score plus end-of-game
+	 *         bonuses)
+	 */
+	int getFinalScore() {
+		return this.score + getEndOfGameBonus(this.numCompletedWallRows, this.numCompletedWallColumns,
+				this.numCompletedColorSets);
 	}
 
 	/**
 	 * @return Whether or not this player has completed a wall row
 	 */
 	boolean hasCompletedWallRow() {
-		return this.getNumCompletedWallRows() > 0;
+		return this.numCompletedWallRows > 0;
 	}
 
 	/**
@@ -177,118 +281,121 @@ class PlayerBoard {
 	 * from the floor line, and updates the score. This method assumes that tile
 	 * placements have been legal up to this point.
 	 * 
-	 * @return A map containing the leftover tiles from completed pattern lines and
-	 *         the floor line that need to be sent to the lid of the box
+	 * @param tileBag
+	 *            The bag whose lid receives the leftover tiles from completed
+	 *            pattern lines and the floor line
 	 */
-	Map<String, Integer> doScoring() {
-		final Map<String, Integer> tilesToLid = new HashMap<>();
-
+	void doScoring(final TileBag tileBag) {
 		for (int i = 0; i < 5; i++) {
-			// determine if row is ready to be scored
-			boolean isRowFull = true;
-			for (int j = 4; j >= 4 - i; j--) {
-				if (this.patternLines[i][j].equals("_")) {
-					isRowFull = false;
-					break;
-				}
-			}
-
 			// if the row is ready to be scored, score it and add extra tiles to the lid
-			if (isRowFull) {
-				final String color = this.patternLines[i][4];
-				final int wallIndex = this.getIndexOfColorInWall(i, color);
-				this.wall[i][wallIndex] = color;
-
-				int tileScore = 0;
-
-				// horizontal
-				int rowLength = 1;
-				for (int left = wallIndex - 1; left >= 0 && !this.wall[i][left].equals("_"); left--) {
-					rowLength++;
-				}
-				for (int right = wallIndex + 1; right < 5 && !this.wall[i][right].equals("_"); right++) {
-					rowLength++;
+			if (this.patternLineCounts[i] == i + 1) {
+				final byte color = this.patternLineColors[i];
+				final int wallIndex = WALL_COLUMNS[i][color];
+				this.wall |= 1 << 5 * i + wallIndex;
+				this.hash ^= Zobrist.wall(this.player, 5 * i + wallIndex);
+				this.wallColumns |= 1 << 5 * wallIndex + i;
+
+				// update the end-of-game bonus counters
+				if (++this.wallRowCounts[i] == 5) {
+					this.numCompletedWallRows++;
 				}
-				tileScore += (rowLength == 1) ? 0 : rowLength;
-
-				// vertical
-				int colLength = 1;
-				for (int up = i - 1; up >= 0 && !this.wall[up][wallIndex].equals("_"); up--) {
-					colLength++;
+				if (++this.wallColumnCounts[wallIndex] == 5) {
+					this.numCompletedWallColumns++;
 				}
-				for (int down = i + 1; down < 5 && !this.wall[down][wallIndex].equals("_"); down++) {
-					colLength++;
+				if (++this.wallColorCounts[color] == 5) {
+					this.numCompletedColorSets++;
 				}
-				tileScore += (colLength == 1) ? 0 : colLength;
-
-				// if the tile is standalone, it is worth exactly one point
-				tileScore = Math.max(tileScore, 1);
 
 				// increment player score
-				this.score += tileScore;
+				this.score += getPlacementScore(this.wall >>> 5 * i & 31, this.wallColumns >>> 5 * wallIndex & 31,
+						i, wallIndex);
 
 				// clear the row
-				for (int j = 4 - i; j < 5; j++) {
-					this.patternLines[i][j] = "_";
-				}
+				this.setPatternLineCount(i, 0);
+				this.patternLineColors[i] = EMPTY;
+				this.updateLegalPlacements(i);
 
 				// add necessary tiles to the lid
 				if (i > 0) {
-					tilesToLid.putIfAbsent(color, 0);
-					tilesToLid.put(color, tilesToLid.get(color) + i);
+					tileBag.addTilesToLid(i, color);
 				}
 			}
 		}
 
 		// handle floor line
-		for (int i = 0; i < 7 && !this.floorLine[i].equals("_"); i++) {
-			this.score += FLOOR_LINE_VALUES[i];
-
-			if (!this.floorLine[i].equals("1")) {
-				final String color = this.floorLine[i];
-
-				tilesToLid.putIfAbsent(color, 0);
-				tilesToLid.put(color, tilesToLid.get(color) + 1);
+		this.score += getFloorLineScore(this.numFloorLineTiles);
+		for (int i = 0; i < this.numFloorLineTiles; i++) {
+			if (this.floorLine[i] != FIRST_PLAYER_TILE) {
+				tileBag.addTilesToLid(1, this.floorLine[i]);
 			}
 
-			this.floorLine[i] = "_";
+			this.setFloorLineTile(i, EMPTY);
 		}
+		this.numFloorLineTiles = 0;
 
 		// score cannot go below zero
 		this.score = Math.max(this.score, 0);
+	}
 
-		return tilesToLid;
+	/**
+	 * Adds the first player tile to the floor line, if possible
+	 * 
+	 * @return Whether or not there was room for the first player tile
+	 */
+	boolean addFirstPlayerTile() {
+		if (this.numFloorLineTiles == 7) {
+			return false;
+		}
+
+		this.setFloorLineTile(this.numFloorLineTiles++, FIRST_PLAYER_TILE);
+		return true;
+	}
+
+	/**
+	 * Removes the first player tile from the floor line. This is only used to undo
+	 * a move, so the first player tile is assumed to be the last tile in the floor
+	 * line.
+	 */
+	void removeFirstPlayerTile() {
+		this.setFloorLineTile(--this.numFloorLineTiles, EMPTY);
 	}
 
 	/**
 	 * @param row
 	 *            Is assumed to be 0-4
-	 * @param color
-	 *            Is assumed to be in the set {B, Y, R, K, W}
-	 * @return The index at which the given color occurs in the wall in the given
-	 *         row
+	 * @return The number of empty spaces left in the given pattern line
 	 */
-	private int getIndexOfColorInWall(final int row, final String color) {
-		for (int i = 0; i < 5; i++) {
-			if (WALL_PLACEMENTS[row][i].equals(color)) {
-				return i;
-			}
-		}
-
-		// this method should never reach this point
-		return -1;
+	int getNumEmptySpaces(final int row) {
+		return row + 1 - this.patternLineCounts[row];
 	}
 
 	/**
-	 * Adds the first player tile to the floor line, if possible
+	 * Takes back tiles that were placed by
+	 * {@link PlayerBoard#addTiles(int, int, int)}. Since that method places tiles
+	 * from left to right in the floor line, the most recently placed tiles are the
+	 * rightmost ones there.
+	 * 
+	 * @param numFromRow
+	 *            The number of tiles to remove from the given pattern line
+	 * @param numFromFloorLine
+	 *            The number of tiles to remove from the floor line
+	 * @param row
+	 *            Is assumed to be from -1-4 (numFromRow is assumed to be zero if
+	 *            row is -1)
 	 */
-	void addFirstPlayerTile() {
-		for (int i = 0; i < 7; i++) {
-			if (this.floorLine[i].equals("_")) {
-				this.floorLine[i] = "1";
-				return;
+	void removeTiles(final int numFromRow, final int numFromFloorLine, final int row) {
+		if (numFromRow > 0) {
+			this.setPatternLineCount(row, this.patternLineCounts[row] - numFromRow);
+
+			if (this.patternLineCounts[row] == 0) {
+				this.patternLineColors[row] = EMPTY;
+				this.updateLegalPlacements(row);
 			}
 		}
+
+		for (int i = 0; i < numFromFloorLine; i++) {
+			this.setFloorLineTile(--this.numFloorLineTiles, EMPTY);
+		}
 	}
 
 	/**
@@ -299,41 +406,34 @@ class PlayerBoard {
 	 * @param numTiles
 	 *            The number of tiles to place
 	 * @param color
-	 *            Is assumed to be one of {B, Y, R, K, W}
+	 *            Is assumed to be 0-4
 	 * @param row
 	 *            Is assumed to be from -1-4
 	 * @return The number of tiles that need to be send to the lid of the game box
 	 *         due to floor line overflow
 	 */
-	int addTiles(final int numTiles, final String color, final int row) {
+	int addTiles(final int numTiles, final int color, final int row) {
 		int numToFloorLine = numTiles;
 
-		// place tiles from right to left in pattern line
+		// fill the pattern line as much as possible
 		if (row != -1) {
-			int i = 4;
-			int numPlaced = 0;
-
-			while (numPlaced < numTiles && i >= 0 && !this.patternLines[row][i].equals("X")) {
-				if (this.patternLines[row][i].equals("_")) {
-					this.patternLines[row][i] = color;
-					numPlaced++;
-					numToFloorLine--;
-				}
+			final int numPlaced = Math.min(numTiles, this.getNumEmptySpaces(row));
 
-				i--;
+			if (numPlaced > 0) {
+				// starting a pattern line rules out every other color for it
+				if (this.patternLineCounts[row] == 0) {
+					this.patternLineColors[row] = (byte) color;
+					this.updateLegalPlacements(row);
+				}
+				this.setPatternLineCount(row, this.patternLineCounts[row] + numPlaced);
+				numToFloorLine -= numPlaced;
 			}
 		}
 
 		// place tiles from left to right in floor line
-		for (int i = 0; i < 7; i++) {
-			if (numToFloorLine == 0) {
-				return 0;
-			}
-
-			if (this.floorLine[i].equals("_")) {
-				this.floorLine[i] = color;
-				numToFloorLine--;
-			}
+		while (numToFloorLine > 0 && this.numFloorLineTiles < 7) {
+			this.setFloorLineTile(this.numFloorLineTiles++, (byte) color);
+			numToFloorLine--;
 		}
 
 		// return the amount of tiles leftover from placing in the floor line
@@ -342,22 +442,142 @@ class PlayerBoard {
 
 	/**
 	 * @param color
-	 *            Is assumed to be one of {B, Y, R, K, W}
+	 *            Is assumed to be 0-4
 	 * @param row
 	 *            Is assumed to be 0-4
 	 * @return Whether or not it is legal to place tiles of the given color into the
 	 *         given row
 	 */
-	boolean isLegalPlacement(final String color, final int row) {
-		// check if our wall already has the tile of the given color
+	boolean isLegalPlacement(final int color, final int row) {
+		return (this.legalPlacementMask & 1 << 5 * color + row) != 0;
+	}
+
+	/**
+	 * @return A mask with bit 5 * color + row set if and only if it is legal to
+	 *         place tiles of that color into that row, so that (mask >>> 5 *
+	 *         color & 31) holds the legal rows for a color
+	 */
+	int getLegalPlacementMask() {
+		return this.legalPlacementMask;
+	}
+
+	/**
+	 * Recomputes the legal placements for the given row from its pattern line and
+	 * wall row. A color is legal if it is not on the wall row yet and the pattern
+	 * line is either empty or already holds that color.
+	 * 
+	 * @param row
+	 *            Is assumed to be 0-4
+	 */
+	private void updateLegalPlacements(final int row) {
+		final int rowMask = LEGAL_PLACEMENT_ROW[31] << row;
+		final int color = this.patternLineColors[row];
+
+		int legalRowPlacements;
+		if (color == EMPTY) {
+			// the wall row holds color (column - row) % 5 in each column, so rotating
+			// its occupancy right by the row gives the colors already on it
+			final int occupancy = this.wall >>> 5 * row & 31;
+			final int colorsOnWall = (occupancy >>> row | occupancy << 5 - row) & 31;
+			legalRowPlacements = LEGAL_PLACEMENT_ROW[~colorsOnWall & 31] << row;
+		} else if ((this.wall & 1 << 5 * row + WALL_COLUMNS[row][color]) == 0) {
+			legalRowPlacements = 1 << 5 * color + row;
+		} else {
+			legalRowPlacements = 0;
+		}
+
+		this.legalPlacementMask = this.legalPlacementMask & ~rowMask | legalRowPlacements;
+	}
+
+	/**
+	 * @return The current score of this player board (without end-of-game
+	 *         bonuses)
+	 */
+	int getScore() {
+		return this.score;
+	}
+
+	/**
+	 * @return The Zobrist hash of this board, including its score
+	 */
+	long getZobristKey() {
+		return this.hash ^ Zobrist.score(this.player, this.score);
+	}
+
+	/**
+	 * @param board
+	 *            The board to compare to (assumed to belong to the same player)
+	 * @return Whether or not the given board has exactly the same pattern lines,
+	 *         wall, floor line, and score as this one
+	 */
+	boolean hasSameTiles(final PlayerBoard board) {
+		return this.wall == board.wall && this.score == board.score
+				&& Arrays.equals(this.patternLineColors, board.patternLineColors)
+				&& Arrays.equals(this.patternLineCounts, board.patternLineCounts)
+				&& Arrays.equals(this.floorLine, board.floorLine);
+	}
+
+	/**
+	 * @return The wall in the format used by {@link PackedAzulState}
+	 */
+	int packWall() {
+		return this.wall;
+	}
+
+	/**
+	 * @return The pattern lines in the format used by {@link PackedAzulState}
+	 */
+	int packPatternLines() {
+		int patternLines = 0;
 		for (int i = 0; i < 5; i++) {
-			if (this.wall[row][i].equals(color)) {
-				return false;
+			if (this.patternLineCounts[i] > 0) {
+				patternLines |= PackedAzulState.packPatternLine(this.patternLineColors[i],
+						this.patternLineCounts[i]) << 6 * i;
+			}
+		}
+		return patternLines;
+	}
+
+	/**
+	 * @return The floor line in the format used by {@link PackedAzulState}
+	 */
+	int packFloorLine() {
+		boolean hasFirstPlayerTile = false;
+		for (int i = 0; i < this.numFloorLineTiles; i++) {
+			hasFirstPlayerTile |= this.floorLine[i] == FIRST_PLAYER_TILE;
+		}
+		return PackedAzulState.packFloorLine(this.numFloorLineTiles, hasFirstPlayerTile);
+	}
+
+	/**
+	 * @param color
+	 *            Is assumed to be 0-4
+	 * @return The number of tiles of the given color in the floor line
+	 */
+	int getNumFloorLineTiles(final int color) {
+		int numTiles = 0;
+		for (int i = 0; i < this.numFloorLineTiles; i++) {
+			if (this.floorLine[i] == color) {
+				numTiles++;
 			}
 		}
+		return numTiles;
+	}
 
-		// check if another color is already in the pattern line
-		return this.patternLines[row][4].equals("_") || this.patternLines[row][4].equals(color);
+	/**
+	 * @param tile
+	 *            A color code, {@link PlayerBoard#EMPTY}, or
+	 *            {@link PlayerBoard#FIRST_PLAYER_TILE}
+	 * @return The character used to print the given tile
+	 */
+	private static char toSymbol(final byte tile) {
+		if (tile == EMPTY) {
+			return '_';
+		}
+		if (tile == FIRST_PLAYER_TILE) {
+			return '1';
+		}
+		return TileColor.getSymbol(tile);
 	}
 
 	/**
@@ -370,20 +590,27 @@ class PlayerBoard {
 		sb.append("Pattern lines = \n");
 		for (int i = 0; i < 5; i++) {
 			for (int j = 0; j < 5; j++) {
-				sb.append(this.patternLines[i][j]);
+				if (j < 4 - i) {
+					sb.append('X');
+				} else if (j > 4 - this.patternLineCounts[i]) {
+					sb.append(toSymbol(this.patternLineColors[i]));
+				} else {
+					sb.append('_');
+				}
 			}
 			sb.append("\n");
 		}
 		sb.append("Wall = \n");
 		for (int i = 0; i < 5; i++) {
 			for (int j = 0; j < 5; j++) {
-				sb.append(this.wall[i][j]);
+				// the color of a wall space is implied by its position
+				sb.append(toSymbol(((this.wall & 1 << 5 * i + j) != 0) ? (byte) ((j - i + 5) % 5) : EMPTY));
 			}
 			sb.append("\n");
 		}
 		sb.append("Floor line = \n");
 		for (int i = 0; i < 7; i++) {
-			sb.append(this.floorLine[i]);
+			sb.append(toSymbol(this.floorLine[i]));
 		}
 		return sb.toString();
 	}
@@ -0,0 +1,51 @@
+package state;
+
+/**
+ * A {@link RefillSource} that draws the tiles randomly, just as they would be
+ * drawn from a real bag, without any input or output.
+ * 
+ * @author Aaron Tetens
+ */
+public final class RandomRefillSource implements RefillSource {
+
+	/**
+	 * Draws from the state's own random number source (see
+	 * {@link AzulState#setRandom(RandomSource)})
+	 */
+	public static final RandomRefillSource INSTANCE = new RandomRefillSource();
+
+	// null means the state's own source is used
+	private final RandomSource random;
+
+	private RandomRefillSource() {
+		this.random = null;
+	}
+
+	/**
+	 * @param random
+	 *            The source of randomness for every refill, which keeps the draws
+	 *            of a game reproducible no matter how the search uses the state's
+	 *            own source
+	 * @throws IllegalArgumentException
+	 *             If the source is null
+	 */
+	public RandomRefillSource(final RandomSource random) throws IllegalArgumentException {
+		if (random == null) {
+			throw new IllegalArgumentException("Tried to refill from a null random source");
+		}
+
+		this.random = random;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void refill(final AzulState state) {
+		if (this.random == null) {
+			state.refillDisplaysRandomly();
+		} else {
+			state.refillDisplaysRandomly(this.random);
+		}
+	}
+}
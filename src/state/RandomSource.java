@@ -0,0 +1,35 @@
+package state;
+
+/**
+ * A source of the random numbers used for random refills of the displays and
+ * random moves. A search gives each of its threads its own source (see
+ * {@link AzulState#setRandom(RandomSource)}), split from a single seeded one,
+ * so that the threads never contend on a shared generator and a whole search
+ * can be replayed exactly from its seed.
+ * 
+ * Unless stated otherwise, a source is not thread-safe and should only be used
+ * by one thread at a time.
+ * 
+ * @author Aaron Tetens
+ */
+public interface RandomSource {
+
+	/**
+	 * @param bound
+	 *            Is assumed to be positive
+	 * @return A uniformly random int from 0 (inclusive) to the given bound
+	 *         (exclusive)
+	 */
+	int nextInt(int bound);
+
+	/**
+	 * @return A uniformly random double from 0 (inclusive) to 1 (exclusive)
+	 */
+	double nextDouble();
+
+	/**
+	 * @return A new, independent source seeded from this one, which can be handed
+	 *         to another thread
+	 */
+	RandomSource split();
+}
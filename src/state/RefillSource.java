@@ -0,0 +1,22 @@
+package state;
+
+/**
+ * Decides which tiles are drawn from the bag to fill the displays at the start
+ * of each round. The tiles can be typed in by hand when playing a real game
+ * ({@link ConsoleRefillSource}) or drawn randomly when the program plays itself
+ * ({@link RandomRefillSource}).
+ * 
+ * @author Aaron Tetens
+ */
+public interface RefillSource {
+
+	/**
+	 * Fills the displays of the given state from its bag. The state is assumed to
+	 * have no tiles in play (that is, the round is over or the game has just been
+	 * created).
+	 * 
+	 * @param state
+	 *            The state whose displays to fill
+	 */
+	void refill(AzulState state);
+}
@@ -0,0 +1,52 @@
+package state;
+
+import java.util.SplittableRandom;
+
+/**
+ * A seeded {@link RandomSource} backed by a {@link SplittableRandom}. The same
+ * seed always gives the same numbers, and so do the sources split from it (as
+ * long as they are split in the same order), which makes searches that use
+ * them reproducible. It is not thread-safe.
+ * 
+ * @author Aaron Tetens
+ */
+public final class SplittableRandomSource implements RandomSource {
+
+	private final SplittableRandom random;
+
+	/**
+	 * @param seed
+	 *            The seed of the generator
+	 */
+	public SplittableRandomSource(final long seed) {
+		this(new SplittableRandom(seed));
+	}
+
+	private SplittableRandomSource(final SplittableRandom random) {
+		this.random = random;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int nextInt(final int bound) {
+		return this.random.nextInt(bound);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public double nextDouble() {
+		return this.random.nextDouble();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public RandomSource split() {
+		return new SplittableRandomSource(this.random.split());
+	}
+}
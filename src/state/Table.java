@@ -11,7 +11,7 @@ class Table extends TileLocation {
 	private boolean hasFirstPlayerTile;
 
 	Table() {
-		super();
+		super(0);
 
 		this.hasFirstPlayerTile = true;
 	}
@@ -43,11 +43,27 @@ class Table extends TileLocation {
 		this.hasFirstPlayerTile = true;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	long getZobristKey() {
+		return super.getZobristKey() ^ (this.hasFirstPlayerTile ? Zobrist.TABLE_FIRST_PLAYER_TILE : 0);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	boolean hasSameTiles(final TileLocation location) {
+		return super.hasSameTiles(location) && this.hasFirstPlayerTile == ((Table) location).hasFirstPlayerTile;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public String toString() {
-		return "Table: " + this.tiles + ", hasFirstPlayerTile = " + this.hasFirstPlayerTile;
+		return "Table: " + this.tilesToString() + ", hasFirstPlayerTile = " + this.hasFirstPlayerTile;
 	}
 }
@@ -0,0 +1,47 @@
+package state;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The {@link RandomSource} used by a state until it is given another one. Every
+ * thread draws from its own {@link ThreadLocalRandom}, so unlike
+ * {@link Math#random()} it is thread-safe without any contention between
+ * threads, but it cannot be seeded, so it should not be used where results need
+ * to be reproducible.
+ * 
+ * @author Aaron Tetens
+ */
+public final class ThreadLocalRandomSource implements RandomSource {
+
+	/**
+	 * The only instance, which may be shared by any number of threads
+	 */
+	public static final ThreadLocalRandomSource INSTANCE = new ThreadLocalRandomSource();
+
+	private ThreadLocalRandomSource() {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int nextInt(final int bound) {
+		return ThreadLocalRandom.current().nextInt(bound);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public double nextDouble() {
+		return ThreadLocalRandom.current().nextDouble();
+	}
+
+	/**
+	 * {@inheritDoc} The new source is seeded from the calling thread's generator.
+	 */
+	@Override
+	public RandomSource split() {
+		return new SplittableRandomSource(ThreadLocalRandom.current().nextLong());
+	}
+}
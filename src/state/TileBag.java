@@ -1,8 +1,6 @@
 package state;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.Arrays;
 
 /**
  * This class represents the bag of tiles in the game and keeps track of the
@@ -10,173 +8,288 @@ import java.util.regex.Pattern;
  * keeps track of which tiles are waiting in the lid of the game box to be put
  * back in the bag once the bag runs out of tiles.
  * 
- * Tiles are stored as strings of length one: B = Blue, Y = Yellow, R = Red, K =
- * Black, and W = White
+ * The bag and the lid are each stored as a count per color (indexed by color
+ * code, see {@link TileColor#getCode()}) along with their totals, so that
+ * random draws do not need to build a list of tiles. A Zobrist hash of the
+ * counts (see {@link Zobrist}) is updated whenever a count changes.
  * 
  * @author Aaron Tetens
  */
 class TileBag {
 
-	// it is vital that entries with value=0 are removed from the maps so that
-	// methods such as isEmpty() behave correctly
-	private final Map<String, Integer> tilesInBag;
-	private final Map<String, Integer> tilesInLid;
+	private final int[] tilesInBag;
+	private final int[] tilesInLid;
+
+	private int numTilesInBag;
+	private int numTilesInLid;
+
+	private long hash;
 
 	TileBag() {
-		this.tilesInBag = new HashMap<>();
-		this.tilesInBag.put("B", 20);
-		this.tilesInBag.put("Y", 20);
-		this.tilesInBag.put("R", 20);
-		this.tilesInBag.put("K", 20);
-		this.tilesInBag.put("W", 20);
+		this.tilesInBag = new int[] { 20, 20, 20, 20, 20 };
+		this.tilesInLid = new int[5];
+
+		this.numTilesInBag = 100;
+		this.numTilesInLid = 0;
 
-		this.tilesInLid = new HashMap<>();
+		this.hash = 0;
+		for (int color = 0; color < TileColor.NUM_COLORS; color++) {
+			this.hash ^= Zobrist.bag(color, 20);
+		}
 	}
 
 	TileBag(final TileBag bag) {
-		this.tilesInBag = new HashMap<>(bag.tilesInBag);
-		this.tilesInLid = new HashMap<>(bag.tilesInLid);
+		this.tilesInBag = bag.tilesInBag.clone();
+		this.tilesInLid = bag.tilesInLid.clone();
+
+		this.numTilesInBag = bag.numTilesInBag;
+		this.numTilesInLid = bag.numTilesInLid;
+
+		this.hash = bag.hash;
 	}
 
 	/**
-	 * @param tile
-	 *            The tile to remove, which should be represented by one of {B, Y,
-	 *            R, K, W}
-	 * @throws IllegalArgumentException
-	 *             If the tile is not in the valid set of tiles, or if the tile is
-	 *             not in the bag
+	 * Sets the number of tiles of the given color in the bag, keeping the hash up
+	 * to date (but not the total).
+	 * 
+	 * @param color
+	 *            Is assumed to be 0-4
+	 * @param count
+	 *            The new number of tiles of the given color in the bag
 	 */
-	void removeSingleTile(final String tile) throws IllegalArgumentException {
-		if (!Pattern.matches("[BYRKW]", tile)) {
-			throw new IllegalArgumentException("Tile must be one of {BYRKW}");
-		}
-
-		if (this.tilesInBag.get(tile) == null) {
-			throw new IllegalArgumentException("Tried to remove " + tile + " from the bag, but there are none left");
-		}
+	private void setNumInBag(final int color, final int count) {
+		this.hash ^= Zobrist.bag(color, this.tilesInBag[color]) ^ Zobrist.bag(color, count);
+		this.tilesInBag[color] = count;
+	}
 
-		this.tilesInBag.put(tile, this.tilesInBag.get(tile) - 1);
+	/**
+	 * Sets the number of tiles of the given color in the lid, keeping the hash up
+	 * to date (but not the total).
+	 * 
+	 * @param color
+	 *            Is assumed to be 0-4
+	 * @param count
+	 *            The new number of tiles of the given color in the lid
+	 */
+	private void setNumInLid(final int color, final int count) {
+		this.hash ^= Zobrist.lid(color, this.tilesInLid[color]) ^ Zobrist.lid(color, count);
+		this.tilesInLid[color] = count;
+	}
 
-		if (this.tilesInBag.get(tile) == 0) {
-			this.tilesInBag.remove(tile);
+	/**
+	 * @param color
+	 *            The color of the tile to remove (0-4)
+	 * @throws IllegalArgumentException
+	 *             If the tile is not in the bag
+	 */
+	void removeSingleTile(final int color) throws IllegalArgumentException {
+		if (this.tilesInBag[color] == 0) {
+			throw new IllegalArgumentException(
+					"Tried to remove " + TileColor.getSymbol(color) + " from the bag, but there are none left");
 		}
+
+		this.setNumInBag(color, this.tilesInBag[color] - 1);
+		this.numTilesInBag--;
 	}
 
 	/**
 	 * @return Whether or not the tile bag is empty
 	 */
 	boolean isBagEmpty() {
-		return this.tilesInBag.isEmpty();
+		return this.numTilesInBag == 0;
 	}
 
 	/**
-	 * Draw a random tile and refill the bag with the tiles in the lid if necessary.
-	 * This method does nothing and returns null if both the lid and bag are empty.
+	 * Fills each display with four random tiles, refilling the bag with the tiles
+	 * in the lid when it runs out. If both the lid and bag run out, the remaining
+	 * displays are left incomplete. The displays are assumed to be empty.
+	 * 
+	 * Rather than drawing one tile at a time, the contents of each display are
+	 * sampled all at once from a multivariate hypergeometric distribution (which
+	 * is exactly the distribution of drawing four tiles from the bag without
+	 * replacement). If the bag runs out partway through a display, that display
+	 * gets everything left in the bag and the rest of its tiles are sampled after
+	 * the lid is emptied into the bag, just as if the tiles were drawn one by one.
 	 * 
-	 * @return One of {B, Y, R, K, W}, which represents the tile that was drawn
+	 * @param tileLocations
+	 *            The tile locations of the game, where index 0 is the table (which
+	 *            is not filled) and the rest are the displays
+	 * @param random
+	 *            The source of randomness for the draws
+	 * @return The number of tiles that were drawn
 	 */
-	String drawRandomTile() {
-		if (this.tilesInBag.isEmpty()) {
-			if (this.tilesInLid.isEmpty()) {
-				return null;
+	int fillDisplaysRandomly(final TileLocation[] tileLocations, final RandomSource random) {
+		int numDrawnTotal = 0;
+
+		for (int i = 1; i < tileLocations.length; i++) {
+			int numToDraw = 4;
+
+			while (numToDraw > 0) {
+				if (this.numTilesInBag == 0) {
+					// if the lid and bag are out of tiles, just stop drawing
+					if (this.numTilesInLid == 0) {
+						return numDrawnTotal;
+					}
+
+					this.addLidTilesToBag();
+				}
+
+				final int numDrawn = Math.min(numToDraw, this.numTilesInBag);
+				this.drawRandomTiles(numDrawn, tileLocations[i], random);
+				numToDraw -= numDrawn;
+				numDrawnTotal += numDrawn;
 			}
+		}
+
+		return numDrawnTotal;
+	}
+
+	/**
+	 * Draws the given number of tiles from the bag without replacement and adds
+	 * them to the given tile location. The number of tiles of each color is
+	 * sampled one color at a time, each from a hypergeometric distribution over
+	 * the tiles that have not been considered yet.
+	 * 
+	 * @param numTiles
+	 *            Is assumed to be no more than the number of tiles in the bag
+	 * @param tileLocation
+	 *            Where to put the drawn tiles
+	 * @param random
+	 *            The source of randomness for the draws
+	 */
+	private void drawRandomTiles(final int numTiles, final TileLocation tileLocation, final RandomSource random) {
+		int numLeftToDraw = numTiles;
+		int numLeftInBag = this.numTilesInBag;
+
+		for (int color = 0; color < TileColor.NUM_COLORS && numLeftToDraw > 0; color++) {
+			final int numOfColor = (color == TileColor.NUM_COLORS - 1) ? numLeftToDraw
+					: drawHypergeometric(numLeftToDraw, this.tilesInBag[color], numLeftInBag, random);
 
-			this.addLidTilesToBag();
+			numLeftInBag -= this.tilesInBag[color];
+
+			if (numOfColor > 0) {
+				this.setNumInBag(color, this.tilesInBag[color] - numOfColor);
+				tileLocation.addTiles(numOfColor, color);
+				numLeftToDraw -= numOfColor;
+			}
 		}
 
-		int numTilesInBag = 0;
-		for (final Integer count : this.tilesInBag.values()) {
-			numTilesInBag += count;
+		this.numTilesInBag -= numTiles;
+	}
+
+	/**
+	 * Samples how many of the given number of draws (without replacement) hit the
+	 * marked tiles, using inversion on the hypergeometric distribution. Since at
+	 * most four tiles are drawn at a time, walking the probabilities up from the
+	 * smallest possible value only takes a few steps.
+	 * 
+	 * @param numDraws
+	 *            The number of tiles drawn
+	 * @param numMarked
+	 *            The number of marked tiles in the population
+	 * @param numTotal
+	 *            The total number of tiles in the population
+	 * @param random
+	 *            The source of randomness for the draw
+	 * @return The number of marked tiles drawn
+	 */
+	private static int drawHypergeometric(final int numDraws, final int numMarked, final int numTotal,
+			final RandomSource random) {
+		final int numUnmarked = numTotal - numMarked;
+
+		if (numMarked == 0) {
+			return 0;
+		}
+		if (numUnmarked == 0) {
+			return numDraws;
 		}
 
-		final String[] tiles = new String[numTilesInBag];
-		int index = 0;
+		final int min = Math.max(0, numDraws - numUnmarked);
+		final int max = Math.min(numDraws, numMarked);
 
-		for (final String color : this.tilesInBag.keySet()) {
-			for (int i = 0; i < this.tilesInBag.get(color); i++) {
-				tiles[index] = color;
-				index++;
-			}
+		// probability of the smallest possible value:
+		// C(numMarked, min) * C(numUnmarked, numDraws - min) / C(numTotal, numDraws)
+		double probability = 1.0;
+		for (int i = 0; i < min; i++) {
+			probability *= (double) (numMarked - i) / (min - i);
+		}
+		for (int i = 0; i < numDraws - min; i++) {
+			probability *= (double) (numUnmarked - i) / (numDraws - min - i);
+		}
+		for (int i = 0; i < numDraws; i++) {
+			probability *= (double) (numDraws - i) / (numTotal - i);
 		}
 
-		final int randomIndex = (int) (Math.random() * numTilesInBag);
-		final String removedTile = tiles[randomIndex];
+		double uniform = random.nextDouble();
+		int numDrawn = min;
 
-		this.tilesInBag.put(removedTile, this.tilesInBag.get(removedTile) - 1);
-		if (this.tilesInBag.get(removedTile) == 0) {
-			this.tilesInBag.remove(removedTile);
+		while (uniform >= probability && numDrawn < max) {
+			uniform -= probability;
+			probability *= (double) (numMarked - numDrawn) * (numDraws - numDrawn)
+					/ ((numDrawn + 1) * (numUnmarked - numDraws + numDrawn + 1));
+			numDrawn++;
 		}
 
-		return removedTile;
+		return numDrawn;
 	}
 
 	/**
 	 * @param numTiles
 	 *            The number of tiles to add
 	 * @param color
-	 *            Is assumed to be one of {B, Y, R, K, W}
+	 *            Is assumed to be 0-4
 	 */
-	void addTilesToLid(final int numTiles, final String color) {
-		this.tilesInLid.putIfAbsent(color, 0);
-		this.tilesInLid.put(color, this.tilesInLid.get(color) + numTiles);
+	void addTilesToLid(final int numTiles, final int color) {
+		this.setNumInLid(color, this.tilesInLid[color] + numTiles);
+		this.numTilesInLid += numTiles;
 	}
 
 	/**
-	 * @param tilesToAdd
-	 *            Is assumed to have keys in the set {B, Y, R, K, W} and values
-	 *            greater than zero
+	 * @param numTiles
+	 *            The number of tiles to remove
+	 * @param color
+	 *            Is assumed to be 0-4, with at least numTiles of them in the lid
 	 */
-	void addTilesToLid(final Map<String, Integer> tilesToAdd) {
-		for (final Map.Entry<String, Integer> entry : tilesToAdd.entrySet()) {
-			final String color = entry.getKey();
-			final Integer count = entry.getValue();
-
-			this.addTilesToLid(count, color);
-		}
+	void removeTilesFromLid(final int numTiles, final int color) {
+		this.setNumInLid(color, this.tilesInLid[color] - numTiles);
+		this.numTilesInLid -= numTiles;
 	}
 
 	/**
-	 * @param tilesToRemove
-	 *            A string representing the tiles that should be removed -
-	 *            tilesToRemove should match the regex pattern [BYRKW]{4}
-	 * @throws IllegalArgumentException
-	 *             If tilesToRemove is not formatted correctly or if tilesToRemove
-	 *             is formatted correctly, but the removal is not possible given the
-	 *             state of the bag
+	 * Makes the contents of this bag and lid the same as those of the given bag.
+	 * 
+	 * @param bag
+	 *            The bag to copy from
 	 */
-	void removeTilesFromInput(final String tilesToRemove) throws IllegalArgumentException {
-		if (!Pattern.matches("[BYRKW]{4}", tilesToRemove)) {
-			throw new IllegalArgumentException("Tiles must be 4 of {BYRKW}");
-		}
+	void copyFrom(final TileBag bag) {
+		System.arraycopy(bag.tilesInBag, 0, this.tilesInBag, 0, 5);
+		System.arraycopy(bag.tilesInLid, 0, this.tilesInLid, 0, 5);
 
-		// check that the removal is possible before attempting it
-		final Map<String, Integer> removals = new HashMap<>();
-		for (int i = 0; i < 4; i++) {
-			final String tileToRemove = tilesToRemove.substring(i, i + 1);
-
-			removals.putIfAbsent(tileToRemove, 0);
-			removals.put(tileToRemove, removals.get(tileToRemove) + 1);
-		}
+		this.numTilesInBag = bag.numTilesInBag;
+		this.numTilesInLid = bag.numTilesInLid;
 
-		for (final Map.Entry<String, Integer> removalEntry : removals.entrySet()) {
-			final String removalColor = removalEntry.getKey();
-			final Integer removalCount = removalEntry.getValue();
+		this.hash = bag.hash;
+	}
 
-			if (!this.tilesInBag.containsKey(removalColor) || this.tilesInBag.get(removalColor) < removalCount) {
-				throw new IllegalArgumentException("Tried to make an impossible removal: " + tilesToRemove);
+	/**
+	 * @param counts
+	 *            The number of tiles of each color to remove
+	 * @throws IllegalArgumentException
+	 *             If the removal is not possible given the state of the bag (in
+	 *             which case nothing is removed)
+	 */
+	void removeTiles(final int[] counts) throws IllegalArgumentException {
+		// check that the removal is possible before attempting it
+		for (int color = 0; color < TileColor.NUM_COLORS; color++) {
+			if (this.tilesInBag[color] < counts[color]) {
+				throw new IllegalArgumentException("Tried to remove " + counts[color] + " "
+						+ TileColor.getSymbol(color) + " from the bag, but there are only " + this.tilesInBag[color]);
 			}
 		}
 
-		for (final Map.Entry<String, Integer> removalEntry : removals.entrySet()) {
-			final String removalColor = removalEntry.getKey();
-			final Integer removalCount = removalEntry.getValue();
-
-			this.tilesInBag.put(removalColor, this.tilesInBag.get(removalColor) - removalCount);
-
-			// remove entries for colors that are no longer in the bag
-			if (this.tilesInBag.get(removalColor) == 0) {
-				this.tilesInBag.remove(removalColor);
-			}
+		for (int color = 0; color < TileColor.NUM_COLORS; color++) {
+			this.setNumInBag(color, this.tilesInBag[color] - counts[color]);
+			this.numTilesInBag -= counts[color];
 		}
 	}
 
@@ -184,13 +297,25 @@ class TileBag {
 	 * @return The number of tiles left in the bag
 	 */
 	int getNumTilesRemaining() {
-		int numTilesRemaining = 0;
+		return this.numTilesInBag;
+	}
 
-		for (final Integer numOfColorRemaining : this.tilesInBag.values()) {
-			numTilesRemaining += numOfColorRemaining;
-		}
+	/**
+	 * @param color
+	 *            Is assumed to be 0-4
+	 * @return The number of tiles of the given color left in the bag
+	 */
+	int getNumInBag(final int color) {
+		return this.tilesInBag[color];
+	}
 
-		return numTilesRemaining;
+	/**
+	 * @param color
+	 *            Is assumed to be 0-4
+	 * @return The number of tiles of the given color waiting in the lid
+	 */
+	int getNumInLid(final int color) {
+		return this.tilesInLid[color];
 	}
 
 	/**
@@ -198,15 +323,48 @@ class TileBag {
 	 * them to the bag.
 	 */
 	void addLidTilesToBag() {
-		for (final Map.Entry<String, Integer> lidEntry : this.tilesInLid.entrySet()) {
-			final String color = lidEntry.getKey();
-			final Integer numOfColor = lidEntry.getValue();
-
-			this.tilesInBag.putIfAbsent(color, 0);
-			this.tilesInBag.put(color, this.tilesInBag.get(color) + numOfColor);
+		for (int color = 0; color < TileColor.NUM_COLORS; color++) {
+			this.setNumInBag(color, this.tilesInBag[color] + this.tilesInLid[color]);
+			this.setNumInLid(color, 0);
 		}
 
-		this.tilesInLid.clear();
+		this.numTilesInBag += this.numTilesInLid;
+		this.numTilesInLid = 0;
+	}
+
+	/**
+	 * @return The Zobrist hash of the tiles in the bag and the lid
+	 */
+	long getZobristKey() {
+		return this.hash;
+	}
+
+	/**
+	 * @param bag
+	 *            The bag to compare to
+	 * @return Whether or not the given bag and lid have exactly the same tiles as
+	 *         this one
+	 */
+	boolean hasSameTiles(final TileBag bag) {
+		return Arrays.equals(this.tilesInBag, bag.tilesInBag) && Arrays.equals(this.tilesInLid, bag.tilesInLid);
+	}
+
+	/**
+	 * @param counts
+	 *            A count for each color
+	 * @return The non-zero counts written like a map, e.g. {B=2, K=1}
+	 */
+	private static String countsToString(final int[] counts) {
+		final StringBuilder sb = new StringBuilder("{");
+		for (int color = 0; color < TileColor.NUM_COLORS; color++) {
+			if (counts[color] > 0) {
+				if (sb.length() > 1) {
+					sb.append(", ");
+				}
+				sb.append(TileColor.getSymbol(color)).append('=').append(counts[color]);
+			}
+		}
+		return sb.append('}').toString();
 	}
 
 	/**
@@ -215,8 +373,8 @@ class TileBag {
 	@Override
 	public String toString() {
 		final StringBuilder sb = new StringBuilder();
-		sb.append("Tiles in bag = " + this.tilesInBag + "\n");
-		sb.append("Tiles in lid = " + this.tilesInLid);
+		sb.append("Tiles in bag = " + countsToString(this.tilesInBag) + "\n");
+		sb.append("Tiles in lid = " + countsToString(this.tilesInLid));
 		return sb.toString();
 	}
 }
@@ -0,0 +1,86 @@
+package state;
+
+/**
+ * The five tile colors in the game. Everything inside the state package stores
+ * and passes colors around as their codes ({@link TileColor#getCode()}, 0-4), so
+ * that tiles can be counted in arrays and compared with ==. The one-character
+ * symbols (B = Blue, Y = Yellow, R = Red, K = Black, and W = White) are only
+ * used to read user input and to print the game.
+ * 
+ * @author Aaron Tetens
+ */
+public enum TileColor {
+
+	BLUE('B'), YELLOW('Y'), RED('R'), BLACK('K'), WHITE('W');
+
+	/**
+	 * The number of tile colors
+	 */
+	public static final int NUM_COLORS = 5;
+
+	private static final TileColor[] COLORS = values();
+
+	private final char symbol;
+
+	private TileColor(final char symbol) {
+		this.symbol = symbol;
+	}
+
+	/**
+	 * @return The code used for this color inside the state package (0-4)
+	 */
+	public int getCode() {
+		return this.ordinal();
+	}
+
+	/**
+	 * @return The one-character symbol for this color
+	 */
+	public char getSymbol() {
+		return this.symbol;
+	}
+
+	/**
+	 * @param code
+	 *            Is assumed to be 0-4
+	 * @return The color with the given code
+	 */
+	public static TileColor fromCode(final int code) {
+		return COLORS[code];
+	}
+
+	/**
+	 * @param code
+	 *            Is assumed to be 0-4
+	 * @return The one-character symbol for the color with the given code
+	 */
+	static char getSymbol(final int code) {
+		return COLORS[code].symbol;
+	}
+
+	/**
+	 * @param symbol
+	 *            One of {B, Y, R, K, W} (case-insensitive)
+	 * @return The color with the given symbol, or null if there is no such color
+	 */
+	public static TileColor fromSymbol(final char symbol) {
+		final char upperCaseSymbol = Character.toUpperCase(symbol);
+		for (final TileColor color : COLORS) {
+			if (color.symbol == upperCaseSymbol) {
+				return color;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @param input
+	 *            A line of user input
+	 * @return The color whose symbol is the entire input, or null if the input is
+	 *         not exactly one of {B, Y, R, K, W} (case-insensitive)
+	 */
+	public static TileColor parse(final String input) {
+		return (input.length() == 1) ? fromSymbol(input.charAt(0)) : null;
+	}
+}
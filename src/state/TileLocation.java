@@ -1,91 +1,141 @@
 package state;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.Arrays;
 
 /**
  * A TileLocation refers to a location in the game from which a player may take
  * or move tiles. The two subclasses of this class are Display and Table, which
  * are the two areas from which players take or move tiles throughout the game.
  * 
- * Tiles are stored as strings of length one: B = Blue, Y = Yellow, R = Red, K =
- * Black, and W = White
+ * Tiles are stored as a count per color (indexed by color code, see
+ * {@link TileColor#getCode()}). A mask with one bit per color that has at least
+ * one tile is kept alongside the counts so that the colors present can be
+ * iterated without checking every count. Each location also knows its index in
+ * the game, which it uses to keep a Zobrist hash of its tiles (see
+ * {@link Zobrist}) up to date, along with a key for its tiles alone that does
+ * not depend on the index.
  * 
  * @author Aaron Tetens
  */
 abstract class TileLocation {
 
-	// it is vital that entries with value=0 are removed from the map so that
-	// methods such as isEmpty() behave correctly
-	protected final Map<String, Integer> tiles;
+	private final int index;
+	private final int[] tiles;
 
-	TileLocation() {
-		this.tiles = new HashMap<>();
+	// it is vital that the bit for a color is cleared when its count reaches zero
+	// so that methods such as isEmpty() behave correctly
+	private int colorMask;
+
+	private long hash;
+	private long contentsKey;
+
+	/**
+	 * @param index
+	 *            The index of this location in the game (0 for the table)
+	 */
+	TileLocation(final int index) {
+		this.index = index;
+		this.tiles = new int[TileColor.NUM_COLORS];
+		this.colorMask = 0;
+		this.hash = 0;
+		this.contentsKey = 0;
 	}
 
 	TileLocation(final TileLocation location) {
-		this.tiles = new HashMap<>(location.tiles);
+		this.index = location.index;
+		this.tiles = location.tiles.clone();
+		this.colorMask = location.colorMask;
+		this.hash = location.hash;
+		this.contentsKey = location.contentsKey;
 	}
 
 	/**
-	 * @return One of each tile that there is at least one of in this location
+	 * Sets the number of tiles of the given color, keeping the hash and the
+	 * contents key up to date (but not the color mask).
+	 * 
+	 * @param color
+	 *            Is assumed to be 0-4
+	 * @param count
+	 *            The new number of tiles of the given color
 	 */
-	String getTileChoices() {
-		final StringBuilder sb = new StringBuilder();
-		for (final String color : this.tiles.keySet()) {
-			sb.append(color);
-		}
-		return sb.toString();
+	private void setNumTiles(final int color, final int count) {
+		this.hash ^= Zobrist.tileLocation(this.index, color, this.tiles[color])
+				^ Zobrist.tileLocation(this.index, color, count);
+		this.contentsKey ^= Zobrist.displayContents(color, this.tiles[color])
+				^ Zobrist.displayContents(color, count);
+		this.tiles[color] = count;
 	}
 
 	/**
-	 * @param tilesToAdd
-	 *            A string representing the tiles to add to this location -
-	 *            tilesToAdd should match the regex pattern [BYRKW]{4}
-	 * @throws IllegalArgumentException
-	 *             If tilesToAdd is not formatted correctly
-	 * @throws IllegalStateException
-	 *             If this tile location is non-empty
+	 * @return A mask with bit i set if and only if there is at least one tile of
+	 *         color i in this location (iterate over it with
+	 *         {@link Integer#numberOfTrailingZeros(int)} and mask &= mask - 1)
 	 */
-	void addTilesFromInput(final String tilesToAdd) throws IllegalArgumentException, IllegalStateException {
-		if (!Pattern.matches("[BYRKW]{4}", tilesToAdd)) {
-			throw new IllegalArgumentException("Tiles must be 4 of {BYRKW}");
-		}
+	int getColorMask() {
+		return this.colorMask;
+	}
 
-		if (!this.isEmpty()) {
-			throw new IllegalStateException("Attempted to add tiles to a non-empty tile location");
+	/**
+	 * Moves every tile in this location to the given location.
+	 * 
+	 * @param location
+	 *            Where to put the tiles
+	 */
+	void moveAllTilesTo(final TileLocation location) {
+		for (int mask = this.colorMask; mask != 0; mask &= mask - 1) {
+			final int color = Integer.numberOfTrailingZeros(mask);
+
+			location.setNumTiles(color, location.tiles[color] + this.tiles[color]);
+			this.setNumTiles(color, 0);
 		}
 
-		for (int i = 0; i < 4; i++) {
-			final String tileToAdd = tilesToAdd.substring(i, i + 1);
+		location.colorMask |= this.colorMask;
+		this.colorMask = 0;
+	}
 
-			this.tiles.putIfAbsent(tileToAdd, 0);
-			this.tiles.put(tileToAdd, this.tiles.get(tileToAdd) + 1);
-		}
+	/**
+	 * @param counts
+	 *            Is filled with the number of tiles of each color in this location
+	 */
+	void copyTilesTo(final int[] counts) {
+		System.arraycopy(this.tiles, 0, counts, 0, TileColor.NUM_COLORS);
 	}
 
 	/**
-	 * @return The tiles that were removed
+	 * @param numTiles
+	 *            The number of tiles to add (assumed to be greater than zero)
+	 * @param color
+	 *            Is assumed to be 0-4
 	 */
-	Map<String, Integer> removeAllTiles() {
-		final Map<String, Integer> removedTiles = new HashMap<>(this.tiles);
-		this.tiles.clear();
-		return removedTiles;
+	void addTiles(final int numTiles, final int color) {
+		this.setNumTiles(color, this.tiles[color] + numTiles);
+		this.colorMask |= 1 << color;
+	}
+
+	/**
+	 * @param counts
+	 *            The number of tiles of each color to add
+	 */
+	void addTiles(final int[] counts) {
+		for (int color = 0; color < TileColor.NUM_COLORS; color++) {
+			if (counts[color] > 0) {
+				this.addTiles(counts[color], color);
+			}
+		}
 	}
 
 	/**
-	 * @param tilesToAdd
-	 *            A map that is assumed to have keys in the set {B, Y, R, K, W} and
-	 *            values greater than zero
+	 * @param counts
+	 *            The number of tiles of each color to remove, which is assumed to
+	 *            be no greater than the number of those tiles in this location
 	 */
-	void addTiles(final Map<String, Integer> tilesToAdd) {
-		for (final Map.Entry<String, Integer> addEntry : tilesToAdd.entrySet()) {
-			final String color = addEntry.getKey();
-			final Integer count = addEntry.getValue();
+	void removeTiles(final int[] counts) {
+		for (int color = 0; color < TileColor.NUM_COLORS; color++) {
+			this.setNumTiles(color, this.tiles[color] - counts[color]);
 
-			this.tiles.putIfAbsent(color, 0);
-			this.tiles.put(color, this.tiles.get(color) + count);
+			if (this.tiles[color] == 0) {
+				this.colorMask &= ~(1 << color);
+			}
 		}
 	}
 
@@ -93,27 +143,81 @@ abstract class TileLocation {
 	 * Removes all tiles of the given color from this tile location.
 	 * 
 	 * @param color
-	 *            Is assumed to be one of {B, Y, R, K, W}
+	 *            Is assumed to be 0-4
 	 * @return The number of tiles that were removed
 	 */
-	int removeAll(final String color) {
-		return this.tiles.remove(color);
+	int removeAll(final int color) {
+		final int numRemoved = this.tiles[color];
+		this.setNumTiles(color, 0);
+		this.colorMask &= ~(1 << color);
+		return numRemoved;
 	}
 
 	/**
-	 * @param tile
-	 *            Is assumed to be one of {B, Y, R, K, W}
+	 * @param color
+	 *            Is assumed to be 0-4
 	 * @return Whether or not this tile location has at least one of the specified
 	 *         tile
 	 */
-	boolean hasTile(final String tile) {
-		return this.tiles.containsKey(tile);
+	boolean hasTile(final int color) {
+		return (this.colorMask & 1 << color) != 0;
+	}
+
+	/**
+	 * @param color
+	 *            Is assumed to be 0-4
+	 * @return The number of the specified tile in this tile location
+	 */
+	int getNumTiles(final int color) {
+		return this.tiles[color];
 	}
 
 	/**
 	 * @return Whether or not this tile location has no tiles
 	 */
 	boolean isEmpty() {
-		return this.tiles.isEmpty();
+		return this.colorMask == 0;
+	}
+
+	/**
+	 * @return A key for the tiles in this location that, unlike
+	 *         {@link TileLocation#getZobristKey()}, is the same for every location
+	 *         with the same tiles
+	 */
+	long getContentsKey() {
+		return this.contentsKey;
+	}
+
+	/**
+	 * @return The Zobrist hash of this location
+	 */
+	long getZobristKey() {
+		return this.hash;
+	}
+
+	/**
+	 * @param location
+	 *            The location to compare to (assumed to have the same index)
+	 * @return Whether or not the given location has exactly the same tiles as this
+	 *         one
+	 */
+	boolean hasSameTiles(final TileLocation location) {
+		return Arrays.equals(this.tiles, location.tiles);
+	}
+
+	/**
+	 * @return The tiles in this location written like a map, e.g. {B=2, K=1}
+	 */
+	String tilesToString() {
+		final StringBuilder sb = new StringBuilder("{");
+		for (int mask = this.colorMask; mask != 0; mask &= mask - 1) {
+			final int color = Integer.numberOfTrailingZeros(mask);
+
+			if (sb.length() > 1) {
+				sb.append(", ");
+			}
+			sb.append(TileColor.getSymbol(color)).append('=').append(this.tiles[color]);
+		}
+		return sb.append('}').toString();
 	}
 }
@@ -0,0 +1,229 @@
+package state;
+
+import java.util.SplittableRandom;
+
+/**
+ * This class holds the random 64-bit keys used to hash game states (Zobrist
+ * hashing). Every piece of a state, such as "3 red tiles in display 2" or "a
+ * tile in column 1 of player 0's fourth wall row", has its own key, and the
+ * hash of a state is the XOR of the keys of all of its pieces. Since XOR is its
+ * own inverse, a piece can be added to or taken out of a hash by XORing its key
+ * in, which lets each part of the state keep its hash up to date as it changes.
+ * 
+ * The keys are generated from a fixed seed, so the same state always has the
+ * same hash, even across runs. Keys for a count of zero are always zero, so
+ * that empty pieces do not contribute to the hash.
+ * 
+ * The contents of a display also have a key that does not depend on which
+ * display they are in. These keys are added together rather than XORed, so
+ * that two displays with the same tiles do not cancel out, which gives a hash
+ * of the displays that does not depend on their order.
+ * 
+ * @author Aaron Tetens
+ */
+final class Zobrist {
+
+	private static final int MAX_PLAYERS = 4;
+	private static final int MAX_TILE_LOCATIONS = 2 * MAX_PLAYERS + 2;
+	private static final int MAX_COUNT = 20;
+	private static final int SCORE_MASK = 255;
+
+	private static final long[][] BAG = new long[TileColor.NUM_COLORS][MAX_COUNT + 1];
+	private static final long[][] LID = new long[TileColor.NUM_COLORS][MAX_COUNT + 1];
+	private static final long[][][] TILE_LOCATION = new long[MAX_TILE_LOCATIONS][TileColor.NUM_COLORS][MAX_COUNT + 1];
+	private static final long[][] DISPLAY_CONTENTS = new long[TileColor.NUM_COLORS][MAX_COUNT + 1];
+	private static final long[][][][] PATTERN_LINE = new long[MAX_PLAYERS][5][TileColor.NUM_COLORS][6];
+	private static final long[][] WALL = new long[MAX_PLAYERS][25];
+	private static final long[][][] FLOOR_LINE = new long[MAX_PLAYERS][7][TileColor.NUM_COLORS + 1];
+	private static final long[][] SCORE = new long[MAX_PLAYERS][SCORE_MASK + 1];
+
+	// players are stored with an offset of one so that -1 (no player) has a key
+	private static final long[] CURRENT_PLAYER = new long[MAX_PLAYERS];
+	private static final long[] LAST_PLAYER = new long[MAX_PLAYERS + 1];
+	private static final long[] NEXT_ROUND_FIRST_PLAYER = new long[MAX_PLAYERS + 1];
+
+	static final long TABLE_FIRST_PLAYER_TILE;
+
+	static {
+		final SplittableRandom random = new SplittableRandom(0x5EED_A2B1L);
+
+		for (int color = 0; color < TileColor.NUM_COLORS; color++) {
+			fillCounts(BAG[color], random);
+			fillCounts(LID[color], random);
+
+			for (int location = 0; location < MAX_TILE_LOCATIONS; location++) {
+				fillCounts(TILE_LOCATION[location][color], random);
+			}
+		}
+
+		for (int player = 0; player < MAX_PLAYERS; player++) {
+			for (int row = 0; row < 5; row++) {
+				for (int color = 0; color < TileColor.NUM_COLORS; color++) {
+					fillCounts(PATTERN_LINE[player][row][color], random);
+				}
+			}
+
+			fill(WALL[player], random);
+
+			for (int space = 0; space < 7; space++) {
+				fill(FLOOR_LINE[player][space], random);
+			}
+
+			fill(SCORE[player], random);
+		}
+
+		fill(CURRENT_PLAYER, random);
+		fill(LAST_PLAYER, random);
+		fill(NEXT_ROUND_FIRST_PLAYER, random);
+
+		TABLE_FIRST_PLAYER_TILE = random.nextLong();
+
+		for (int color = 0; color < TileColor.NUM_COLORS; color++) {
+			fillCounts(DISPLAY_CONTENTS[color], random);
+		}
+	}
+
+	private Zobrist() {
+	}
+
+	/**
+	 * @param keys
+	 *            Is filled with random keys
+	 * @param random
+	 *            The source of the keys
+	 */
+	private static void fill(final long[] keys, final SplittableRandom random) {
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = random.nextLong();
+		}
+	}
+
+	/**
+	 * @param keys
+	 *            Is filled with random keys, except for index 0 (a count of zero),
+	 *            which is left as zero
+	 * @param random
+	 *            The source of the keys
+	 */
+	private static void fillCounts(final long[] keys, final SplittableRandom random) {
+		for (int i = 1; i < keys.length; i++) {
+			keys[i] = random.nextLong();
+		}
+	}
+
+	/**
+	 * @param color
+	 *            Is assumed to be 0-4
+	 * @param count
+	 *            Is assumed to be 0-20
+	 * @return The key for having the given number of tiles of the given color in
+	 *         the bag
+	 */
+	static long bag(final int color, final int count) {
+		return BAG[color][count];
+	}
+
+	/**
+	 * @param color
+	 *            Is assumed to be 0-4
+	 * @param count
+	 *            Is assumed to be 0-20
+	 * @return The key for having the given number of tiles of the given color in
+	 *         the lid
+	 */
+	static long lid(final int color, final int count) {
+		return LID[color][count];
+	}
+
+	/**
+	 * @param location
+	 *            The index of the tile location (0 for the table)
+	 * @param color
+	 *            Is assumed to be 0-4
+	 * @param count
+	 *            Is assumed to be 0-20
+	 * @return The key for having the given number of tiles of the given color in
+	 *         the given tile location
+	 */
+	static long tileLocation(final int location, final int color, final int count) {
+		return TILE_LOCATION[location][color][count];
+	}
+
+	/**
+	 * @param color
+	 *            Is assumed to be 0-4
+	 * @param count
+	 *            Is assumed to be 0-20
+	 * @return The key for having the given number of tiles of the given color in
+	 *         a tile location, no matter which one
+	 */
+	static long displayContents(final int color, final int count) {
+		return DISPLAY_CONTENTS[color][count];
+	}
+
+	/**
+	 * @param player
+	 *            Is assumed to be 0-3
+	 * @param row
+	 *            Is assumed to be 0-4
+	 * @param color
+	 *            Is assumed to be 0-4
+	 * @param count
+	 *            Is assumed to be 0-5
+	 * @return The key for having the given number of tiles of the given color in
+	 *         the given pattern line
+	 */
+	static long patternLine(final int player, final int row, final int color, final int count) {
+		return PATTERN_LINE[player][row][color][count];
+	}
+
+	/**
+	 * @param player
+	 *            Is assumed to be 0-3
+	 * @param space
+	 *            The wall space (5 * row + column)
+	 * @return The key for having a tile in the given wall space
+	 */
+	static long wall(final int player, final int space) {
+		return WALL[player][space];
+	}
+
+	/**
+	 * @param player
+	 *            Is assumed to be 0-3
+	 * @param space
+	 *            Is assumed to be 0-6
+	 * @param tile
+	 *            A color code or {@link PlayerBoard#FIRST_PLAYER_TILE}
+	 * @return The key for having the given tile in the given floor line space
+	 */
+	static long floorLine(final int player, final int space, final int tile) {
+		return FLOOR_LINE[player][space][tile];
+	}
+
+	/**
+	 * @param player
+	 *            Is assumed to be 0-3
+	 * @param score
+	 *            The player's score (scores that differ by a multiple of 256 share
+	 *            a key, which only costs a rare hash collision)
+	 * @return The key for the given player having the given score
+	 */
+	static long score(final int player, final int score) {
+		return SCORE[player][score & SCORE_MASK];
+	}
+
+	/**
+	 * @param currentPlayer
+	 *            Is assumed to be 0-3
+	 * @param lastPlayer
+	 *            Is assumed to be from -1-3
+	 * @param nextRoundFirstPlayer
+	 *            Is assumed to be from -1-3
+	 * @return The key for the given turn order
+	 */
+	static long players(final int currentPlayer, final int lastPlayer, final int nextRoundFirstPlayer) {
+		return CURRENT_PLAYER[currentPlayer] ^ LAST_PLAYER[lastPlayer + 1]
+				^ NEXT_ROUND_FIRST_PLAYER[nextRoundFirstPlayer + 1];
+	}
+}